@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import java.util.Base64;
+
+/**
+ * table driven encodings of hash values
+ */
+abstract class Encodings {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+
+	private Encodings() {
+		// no instance
+	}
+
+	static String hex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0, c = 0; i < bytes.length; i++) {
+			int b = bytes[i] & 0xff;
+			chars[c++] = HEX[b >>> 4];
+			chars[c++] = HEX[b & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * url and file name safe alphabet, without padding
+	 */
+	static String base64(byte[] bytes) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * rfc 4648 alphabet, without padding
+	 */
+	static String base32(byte[] bytes) {
+		char[] chars = new char[(bytes.length * 8 + 4) / 5];
+		int buffer = 0;
+		int bits = 0;
+		int c = 0;
+		for (byte b : bytes) {
+			buffer = (buffer << 8) | (b & 0xff);
+			bits += 8;
+			while (bits >= 5) {
+				bits -= 5;
+				chars[c++] = BASE32[(buffer >>> bits) & 0x1f];
+			}
+		}
+		if (bits > 0) {
+			chars[c++] = BASE32[(buffer << (5 - bits)) & 0x1f];
+		}
+		return new String(chars, 0, c);
+	}
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import de.flapdoodle.collections.TypedMap;
+import de.flapdoodle.types.Either;
+import de.flapdoodle.types.Maybe;
+import de.flapdoodle.types.Pair;
+
+/**
+ * writes the content of a value into a hasher, without building an intermediate string
+ *
+ * funnels for composed values write a tag or length before each part, so that different values
+ * do not end up as the same byte sequence.
+ */
+@FunctionalInterface
+public interface Funnel<T> {
+	void funnel(T value, Hasher into);
+
+	/**
+	 * length prefixed chars
+	 */
+	static Funnel<CharSequence> string() {
+		return (value, into) -> into.putString(value);
+	}
+
+	static Funnel<Integer> integer() {
+		return (value, into) -> into.putInt(value);
+	}
+
+	static Funnel<Long> longValue() {
+		return (value, into) -> into.putLong(value);
+	}
+
+	static Funnel<Boolean> bool() {
+		return (value, into) -> into.putBoolean(value);
+	}
+
+	static <A, B> Funnel<Pair<A, B>> pair(Funnel<? super A> first, Funnel<? super B> second) {
+		return (value, into) -> into
+			.put(value.first(), first)
+			.put(value.second(), second);
+	}
+
+	static <L, R> Funnel<Either<L, R>> either(Funnel<? super L> left, Funnel<? super R> right) {
+		return (value, into) -> {
+			if (value.isLeft()) {
+				into.putByte((byte) 0).put(value.left(), left);
+			} else {
+				into.putByte((byte) 1).put(value.right(), right);
+			}
+		};
+	}
+
+	/**
+	 * a some(null) value is passed to the funnel of the content
+	 */
+	static <T> Funnel<Maybe<T>> maybe(Funnel<? super T> content) {
+		return (value, into) -> {
+			into.putBoolean(value.hasSome());
+			if (value.hasSome()) {
+				into.put(value.get(), content);
+			}
+		};
+	}
+
+	/**
+	 * the hash does not depend on the iteration order of the map, the type of each entry is hashed by its string representation
+	 */
+	static <K> Funnel<TypedMap<K>> typedMap(Funnel<? super K> keys, Funnel<Object> values) {
+		return Funnels.typedMap(keys, values);
+	}
+
+	/**
+	 * dispatches on the runtime type: null, CharSequence, Boolean, Integer, Long, byte[], Enum, Pair, Either, Maybe and
+	 * TypedMap (recursively), throws an IllegalArgumentException for everything else
+	 */
+	static Funnel<Object> any() {
+		return Funnels.ANY;
+	}
+}
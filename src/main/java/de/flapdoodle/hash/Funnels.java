@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import de.flapdoodle.collections.TypedMap;
+import de.flapdoodle.reflection.TypeInfo;
+import de.flapdoodle.types.Either;
+import de.flapdoodle.types.Maybe;
+import de.flapdoodle.types.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+abstract class Funnels {
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte BOOLEAN = 2;
+	private static final byte INTEGER = 3;
+	private static final byte LONG = 4;
+	private static final byte BYTES = 5;
+	private static final byte ENUM = 6;
+	private static final byte PAIR = 7;
+	private static final byte EITHER = 8;
+	private static final byte MAYBE = 9;
+	private static final byte TYPED_MAP = 10;
+
+	static final Funnel<Object> ANY = Funnels::any;
+
+	private static final Funnel<Pair<Object, Object>> ANY_PAIR = Funnel.pair(ANY, ANY);
+	private static final Funnel<Either<Object, Object>> ANY_EITHER = Funnel.either(ANY, ANY);
+	private static final Funnel<Maybe<Object>> ANY_MAYBE = Funnel.maybe(ANY);
+	private static final Funnel<TypedMap<Object>> ANY_TYPED_MAP = typedMap(ANY, ANY);
+
+	private Funnels() {
+		// no instance
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void any(Object value, Hasher into) {
+		if (value == null) {
+			into.putByte(NULL);
+		} else if (value instanceof CharSequence) {
+			into.putByte(STRING).putString((CharSequence) value);
+		} else if (value instanceof Boolean) {
+			into.putByte(BOOLEAN).putBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			into.putByte(INTEGER).putInt((Integer) value);
+		} else if (value instanceof Long) {
+			into.putByte(LONG).putLong((Long) value);
+		} else if (value instanceof byte[]) {
+			byte[] bytes = (byte[]) value;
+			into.putByte(BYTES).putInt(bytes.length).update(bytes);
+		} else if (value instanceof Enum) {
+			Enum<?> enumValue = (Enum<?>) value;
+			into.putByte(ENUM).putString(enumValue.getDeclaringClass().getName()).putString(enumValue.name());
+		} else if (value instanceof Pair) {
+			into.putByte(PAIR).put((Pair<Object, Object>) value, ANY_PAIR);
+		} else if (value instanceof Either) {
+			into.putByte(EITHER).put((Either<Object, Object>) value, ANY_EITHER);
+		} else if (value instanceof Maybe) {
+			into.putByte(MAYBE).put((Maybe<Object>) value, ANY_MAYBE);
+		} else if (value instanceof TypedMap) {
+			into.putByte(TYPED_MAP).put((TypedMap<Object>) value, ANY_TYPED_MAP);
+		} else {
+			throw new IllegalArgumentException("no funnel for " + value.getClass());
+		}
+	}
+
+	/**
+	 * each entry is hashed on its own, the sorted entry hashes are combined
+	 */
+	static <K> Funnel<TypedMap<K>> typedMap(Funnel<? super K> keys, Funnel<Object> values) {
+		return (map, into) -> {
+			Set<? extends Pair<K, ? extends TypeInfo<?>>> entries = map.keySet();
+			Hasher entryHasher = into.snapshot().reset();
+			List<byte[]> entryHashes = new ArrayList<>(entries.size());
+			for (Pair<K, ? extends TypeInfo<?>> entry : entries) {
+				entryHashes.add(entryHasher
+					.put(entry.first(), keys)
+					.putString(entry.second().toString())
+					.put(map.get(entry.second(), entry.first()), values)
+					.hashAsBytes());
+			}
+			entryHashes.sort(Funnels::compareUnsigned);
+			into.putInt(entryHashes.size());
+			entryHashes.forEach(into::update);
+		};
+	}
+
+	private static int compareUnsigned(byte[] a, byte[] b) {
+		int length = Math.min(a.length, b.length);
+		for (int i = 0; i < length; i++) {
+			int diff = (a[i] & 0xff) - (b[i] & 0xff);
+			if (diff != 0) {
+				return diff;
+			}
+		}
+		return a.length - b.length;
+	}
+}
@@ -16,21 +16,47 @@
  */
 package de.flapdoodle.hash;
 
+import de.flapdoodle.checks.Preconditions;
 import de.flapdoodle.types.Try;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.util.function.Function;
 
+/**
+ * new instances are cloned from a prototype digest, so that there is no provider lookup for each instance
+ */
 public class Hasher {
 
+	private static final int SCRATCH_SIZE = 64;
+
 	private final MessageDigest digest;
+	private boolean inUse;
+	private byte[] scratch;
 
 	private Hasher(MessageDigest digest) {
 		this.digest = digest;
 	}
 
+	/**
+	 * start again, as if nothing was hashed
+	 */
+	public Hasher reset() {
+		digest.reset();
+		return this;
+	}
+
+	/**
+	 * copy of the current state, so the hash of everything so far can be computed and this instance can
+	 * still be updated
+	 */
+	public Hasher snapshot() {
+		return new Hasher(copyOf(digest));
+	}
+
 	public Hasher update(String content, Charset charset) {
 		digest.update(content.getBytes(charset));
 		return this;
@@ -50,21 +76,192 @@ public class Hasher {
 		return this;
 	}
 	
+	public Hasher putByte(byte value) {
+		digest.update(value);
+		return this;
+	}
+
+	public Hasher putBoolean(boolean value) {
+		return putByte(value ? (byte) 1 : (byte) 0);
+	}
+
+	/**
+	 * big endian
+	 */
+	public Hasher putInt(int value) {
+		byte[] buffer = scratch();
+		buffer[0] = (byte) (value >>> 24);
+		buffer[1] = (byte) (value >>> 16);
+		buffer[2] = (byte) (value >>> 8);
+		buffer[3] = (byte) value;
+		digest.update(buffer, 0, 4);
+		return this;
+	}
+
+	/**
+	 * big endian
+	 */
+	public Hasher putLong(long value) {
+		byte[] buffer = scratch();
+		for (int i = 7; i >= 0; i--) {
+			buffer[i] = (byte) value;
+			value >>>= 8;
+		}
+		digest.update(buffer, 0, 8);
+		return this;
+	}
+
+	/**
+	 * each char as two bytes (big endian), without encoding and without length
+	 */
+	public Hasher putChars(CharSequence content) {
+		byte[] buffer = scratch();
+		int length = content.length();
+		int filled = 0;
+		for (int i = 0; i < length; i++) {
+			char c = content.charAt(i);
+			buffer[filled++] = (byte) (c >>> 8);
+			buffer[filled++] = (byte) c;
+			if (filled == buffer.length) {
+				digest.update(buffer, 0, filled);
+				filled = 0;
+			}
+		}
+		digest.update(buffer, 0, filled);
+		return this;
+	}
+
+	/**
+	 * length prefixed, so that "ab","c" and "a","bc" give different hashes
+	 */
+	public Hasher putString(CharSequence content) {
+		return putInt(content.length()).putChars(content);
+	}
+
+	public <T> Hasher put(T value, Funnel<? super T> funnel) {
+		funnel.funnel(value, this);
+		return this;
+	}
+
+	private byte[] scratch() {
+		if (scratch == null) {
+			scratch = new byte[SCRATCH_SIZE];
+		}
+		return scratch;
+	}
+
+	public int hashLength() {
+		return digest.getDigestLength();
+	}
+
+	public byte[] hashAsBytes() {
+		return digest.digest();
+	}
+
+	/**
+	 * @return number of bytes written, see {@link #hashLength()}
+	 */
+	public int hashInto(byte[] destination, int offset) {
+		Preconditions.checkArgument(offset >= 0 && destination.length - offset >= hashLength(), "not enough space for %s bytes at %s: %s", hashLength(), offset, destination.length);
+		try {
+			return digest.digest(destination, offset, hashLength());
+		}
+		catch (DigestException ex) {
+			throw new IllegalArgumentException("could not write hash into destination", ex);
+		}
+	}
+
+	/**
+	 * lower case hex
+	 */
 	public String hashAsString() {
-		return byteArrayToHex(digest.digest());
+		return Encodings.hex(hashAsBytes());
+	}
+
+	/**
+	 * url and file name safe base64, without padding
+	 */
+	public String hashAsBase64() {
+		return Encodings.base64(hashAsBytes());
+	}
+
+	/**
+	 * rfc 4648 base32, without padding
+	 */
+	public String hashAsBase32() {
+		return Encodings.base32(hashAsBytes());
 	}
 
 	public static Hasher instance() {
-		return new Hasher(Try.get(() -> MessageDigest.getInstance("SHA-256")));
+		return new Hasher(Algorithm.SHA256.newDigest());
 	}
 
 	public static Hasher md5Instance() {
-		return new Hasher(Try.get(() -> MessageDigest.getInstance("MD5")));
+		return new Hasher(Algorithm.MD5.newDigest());
+	}
+
+	/**
+	 * applies action to a reset sha256 instance of the current thread, the instance must not be used outside of action
+	 */
+	public static <T> T withInstance(Function<Hasher, T> action) {
+		return Algorithm.SHA256.withThreadLocal(action);
+	}
+
+	/**
+	 * @see #withInstance(Function)
+	 */
+	public static <T> T withMd5Instance(Function<Hasher, T> action) {
+		return Algorithm.MD5.withThreadLocal(action);
 	}
 
-	private static String byteArrayToHex(byte[] a) {
-		StringBuilder sb = new StringBuilder(a.length * 2);
-		for (byte b : a) sb.append(String.format("%02x", b));
-		return sb.toString();
+	private static MessageDigest copyOf(MessageDigest digest) {
+		try {
+			return (MessageDigest) digest.clone();
+		}
+		catch (CloneNotSupportedException ex) {
+			throw new IllegalArgumentException("could not copy " + digest.getAlgorithm() + " digest of " + digest.getProvider(), ex);
+		}
+	}
+
+	private enum Algorithm {
+		SHA256("SHA-256"),
+		MD5("MD5");
+
+		private final String name;
+		private final MessageDigest prototype;
+		private final ThreadLocal<Hasher> threadLocal;
+
+		Algorithm(String name) {
+			this.name = name;
+			this.prototype = Try.get(() -> MessageDigest.getInstance(name));
+			this.threadLocal = ThreadLocal.withInitial(() -> new Hasher(newDigest()));
+		}
+
+		private MessageDigest newDigest() {
+			try {
+				return (MessageDigest) prototype.clone();
+			}
+			catch (CloneNotSupportedException ex) {
+				return Try.get(() -> MessageDigest.getInstance(name));
+			}
+		}
+
+		/**
+		 * a nested call gets a new instance
+		 */
+		private <T> T withThreadLocal(Function<Hasher, T> action) {
+			Hasher hasher = threadLocal.get();
+			if (hasher.inUse) {
+				return action.apply(new Hasher(newDigest()));
+			}
+			hasher.inUse = true;
+			try {
+				return action.apply(hasher.reset());
+			}
+			finally {
+				hasher.reset();
+				hasher.inUse = false;
+			}
+		}
 	}
 }
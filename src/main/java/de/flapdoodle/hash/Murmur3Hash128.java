@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MurmurHash3 x64_128, a fast non cryptographic hash
+ */
+public final class Murmur3Hash128 extends StreamingHash<Murmur3Hash128> {
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+
+	private final long seed;
+	private long h1;
+	private long h2;
+
+	private Murmur3Hash128(int seed) {
+		super(16);
+		this.seed = seed & 0xffffffffL;
+		resetState();
+	}
+
+	@Override
+	Murmur3Hash128 self() {
+		return this;
+	}
+
+	@Override
+	void resetState() {
+		h1 = seed;
+		h2 = seed;
+	}
+
+	@Override
+	void processBlock(ByteBuffer block, int offset) {
+		long k1 = block.getLong(offset);
+		long k2 = block.getLong(offset + 8);
+
+		h1 ^= mixK1(k1);
+		h1 = Long.rotateLeft(h1, 27);
+		h1 += h2;
+		h1 = h1 * 5 + 0x52dce729;
+
+		h2 ^= mixK2(k2);
+		h2 = Long.rotateLeft(h2, 31);
+		h2 += h1;
+		h2 = h2 * 5 + 0x38495ab5;
+	}
+
+	/**
+	 * h1 and h2 little endian, as the reference implementation writes them
+	 */
+	@Override
+	public byte[] hashAsBytes() {
+		return asBytes(finish(h1, h2, bufferView(), 0, buffered(), length()));
+	}
+
+	/**
+	 * the first 64 bits of the hash
+	 */
+	public long hashAsLong() {
+		return finish(h1, h2, bufferView(), 0, buffered(), length())[0];
+	}
+
+	/**
+	 * less than a block from position to end
+	 */
+	private static long[] finish(long h1, long h2, ByteBuffer data, int position, int end, long length) {
+		int tail = end - position;
+		if (tail > 8) {
+			long k2 = 0;
+			for (int i = 8; i < tail; i++) {
+				k2 |= (data.get(position + i) & 0xffL) << ((i - 8) * 8);
+			}
+			h2 ^= mixK2(k2);
+		}
+		if (tail > 0) {
+			long k1 = 0;
+			for (int i = 0; i < Math.min(tail, 8); i++) {
+				k1 |= (data.get(position + i) & 0xffL) << (i * 8);
+			}
+			h1 ^= mixK1(k1);
+		}
+		h1 ^= length;
+		h2 ^= length;
+		h1 += h2;
+		h2 += h1;
+		h1 = fmix(h1);
+		h2 = fmix(h2);
+		h1 += h2;
+		h2 += h1;
+		return new long[] { h1, h2 };
+	}
+
+	/**
+	 * one shot without buffering
+	 */
+	private static long[] hash(ByteBuffer data, int offset, int length, int seed) {
+		long h1 = seed & 0xffffffffL;
+		long h2 = h1;
+		int position = offset;
+		int end = offset + length;
+		while (position + 16 <= end) {
+			h1 ^= mixK1(data.getLong(position));
+			h1 = Long.rotateLeft(h1, 27);
+			h1 += h2;
+			h1 = h1 * 5 + 0x52dce729;
+
+			h2 ^= mixK2(data.getLong(position + 8));
+			h2 = Long.rotateLeft(h2, 31);
+			h2 += h1;
+			h2 = h2 * 5 + 0x38495ab5;
+			position += 16;
+		}
+		return finish(h1, h2, data, position, end, length);
+	}
+
+	private static byte[] asBytes(long[] hash) {
+		byte[] ret = new byte[16];
+		for (int i = 0; i < 8; i++) {
+			ret[i] = (byte) (hash[0] >>> (i * 8));
+			ret[i + 8] = (byte) (hash[1] >>> (i * 8));
+		}
+		return ret;
+	}
+
+	private static long mixK1(long k1) {
+		return Long.rotateLeft(k1 * C1, 31) * C2;
+	}
+
+	private static long mixK2(long k2) {
+		return Long.rotateLeft(k2 * C2, 33) * C1;
+	}
+
+	private static long fmix(long k) {
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	public static Murmur3Hash128 instance() {
+		return instance(0);
+	}
+
+	public static Murmur3Hash128 instance(int seed) {
+		return new Murmur3Hash128(seed);
+	}
+
+	public static byte[] hash(byte[] content) {
+		return hash(content, 0);
+	}
+
+	public static byte[] hash(byte[] content, int seed) {
+		return asBytes(hash(littleEndian(content), 0, content.length, seed));
+	}
+
+	/**
+	 * the position of content is not changed
+	 */
+	public static byte[] hash(ByteBuffer content) {
+		return asBytes(hash(littleEndian(content), content.position(), content.remaining(), 0));
+	}
+
+	public static byte[] hash(CharSequence content) {
+		return instance().update(content).hashAsBytes();
+	}
+}
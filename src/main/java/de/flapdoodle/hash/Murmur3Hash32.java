@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MurmurHash3 x86_32, a fast non cryptographic hash
+ */
+public final class Murmur3Hash32 extends StreamingHash<Murmur3Hash32> {
+	private static final int C1 = 0xcc9e2d51;
+	private static final int C2 = 0x1b873593;
+
+	private final int seed;
+	private int h1;
+
+	/**
+	 * four words per block, fewer calls than one block per word
+	 */
+	private static final int BLOCK_LENGTH = 16;
+
+	private Murmur3Hash32(int seed) {
+		super(BLOCK_LENGTH);
+		this.seed = seed;
+		resetState();
+	}
+
+	@Override
+	Murmur3Hash32 self() {
+		return this;
+	}
+
+	@Override
+	void resetState() {
+		h1 = seed;
+	}
+
+	@Override
+	void processBlock(ByteBuffer block, int offset) {
+		int hash = h1;
+		for (int i = 0; i < BLOCK_LENGTH; i += 4) {
+			hash = mixH1(hash, block.getInt(offset + i));
+		}
+		h1 = hash;
+	}
+
+	public int hashAsInt() {
+		int hash = h1;
+		ByteBuffer remaining = bufferView();
+		int end = buffered();
+		int position = 0;
+		while (position + 4 <= end) {
+			hash = mixH1(hash, remaining.getInt(position));
+			position += 4;
+		}
+		return finish(hash, remaining, position, end, length());
+	}
+
+	/**
+	 * little endian, as the reference implementation writes it
+	 */
+	@Override
+	public byte[] hashAsBytes() {
+		int hash = hashAsInt();
+		return new byte[] { (byte) hash, (byte) (hash >>> 8), (byte) (hash >>> 16), (byte) (hash >>> 24) };
+	}
+
+	/**
+	 * less than a word from position to end
+	 */
+	private static int finish(int hash, ByteBuffer data, int position, int end, long length) {
+		if (position < end) {
+			int k1 = 0;
+			for (int i = position; i < end; i++) {
+				k1 |= (data.get(i) & 0xff) << ((i - position) * 8);
+			}
+			hash ^= mixK1(k1);
+		}
+		return fmix(hash ^ (int) length);
+	}
+
+	/**
+	 * one shot without buffering
+	 */
+	private static int hash(ByteBuffer data, int offset, int length, int seed) {
+		int hash = seed;
+		int position = offset;
+		int end = offset + length;
+		while (position + 4 <= end) {
+			hash = mixH1(hash, data.getInt(position));
+			position += 4;
+		}
+		return finish(hash, data, position, end, length);
+	}
+
+	private static int mixH1(int h1, int k1) {
+		return Integer.rotateLeft(h1 ^ mixK1(k1), 13) * 5 + 0xe6546b64;
+	}
+
+	private static int mixK1(int k1) {
+		return Integer.rotateLeft(k1 * C1, 15) * C2;
+	}
+
+	private static int fmix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		hash ^= hash >>> 13;
+		hash *= 0xc2b2ae35;
+		hash ^= hash >>> 16;
+		return hash;
+	}
+
+	public static Murmur3Hash32 instance() {
+		return instance(0);
+	}
+
+	public static Murmur3Hash32 instance(int seed) {
+		return new Murmur3Hash32(seed);
+	}
+
+	public static int hash(byte[] content) {
+		return hash(content, 0);
+	}
+
+	public static int hash(byte[] content, int seed) {
+		return hash(littleEndian(content), 0, content.length, seed);
+	}
+
+	/**
+	 * the position of content is not changed
+	 */
+	public static int hash(ByteBuffer content) {
+		return hash(littleEndian(content), content.position(), content.remaining(), 0);
+	}
+
+	public static int hash(CharSequence content) {
+		return instance().update(content).hashAsInt();
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * block wise hashing, input is buffered until a block is complete
+ *
+ * the hash can be computed at any time, more content can be added afterwards.
+ * Strings are hashed as utf-8 without creating an encoded copy.
+ */
+public abstract class StreamingHash<T extends StreamingHash<T>> {
+	private final byte[] buffer;
+	private final ByteBuffer bufferView;
+	private int buffered;
+	private long length;
+
+	StreamingHash(int blockSize) {
+		this.buffer = new byte[blockSize];
+		this.bufferView = littleEndian(buffer);
+	}
+
+	abstract T self();
+
+	/**
+	 * @param block little endian view, blockSize bytes starting at offset
+	 */
+	abstract void processBlock(ByteBuffer block, int offset);
+
+	abstract void resetState();
+
+	public T update(byte[] content) {
+		return update(content, 0, content.length);
+	}
+
+	public T update(byte[] content, int offset, int count) {
+		Preconditions.checkArgument(offset >= 0 && count >= 0 && offset + count <= content.length, "out of bounds: %s+%s > %s", offset, count, content.length);
+		length += count;
+		int position = offset;
+		int end = offset + count;
+		if (buffered > 0) {
+			int n = Math.min(count, buffer.length - buffered);
+			System.arraycopy(content, position, buffer, buffered, n);
+			buffered += n;
+			position += n;
+			if (buffered < buffer.length) {
+				return self();
+			}
+			processBlock(bufferView, 0);
+			buffered = 0;
+		}
+		if (end - position >= buffer.length) {
+			ByteBuffer view = littleEndian(content);
+			while (end - position >= buffer.length) {
+				processBlock(view, position);
+				position += buffer.length;
+			}
+		}
+		System.arraycopy(content, position, buffer, 0, end - position);
+		buffered = end - position;
+		return self();
+	}
+
+	public T update(ByteBuffer content) {
+		if (content.hasArray()) {
+			int count = content.remaining();
+			update(content.array(), content.arrayOffset() + content.position(), count);
+			content.position(content.position() + count);
+			return self();
+		}
+		while (content.hasRemaining()) {
+			if (buffered == 0 && content.remaining() >= buffer.length) {
+				// blocks are read from the buffer itself
+				ByteBuffer view = littleEndian(content);
+				int position = content.position();
+				int blocks = content.remaining() / buffer.length;
+				for (int i = 0; i < blocks; i++) {
+					processBlock(view, position);
+					position += buffer.length;
+				}
+				length += (long) blocks * buffer.length;
+				content.position(position);
+			} else {
+				int n = Math.min(content.remaining(), buffer.length - buffered);
+				content.get(buffer, buffered, n);
+				buffered += n;
+				length += n;
+				if (buffered == buffer.length) {
+					processBlock(bufferView, 0);
+					buffered = 0;
+				}
+			}
+		}
+		return self();
+	}
+
+	/**
+	 * same result as hashing content.toString().getBytes(UTF_8)
+	 */
+	public T update(CharSequence content) {
+		int count = content.length();
+		for (int i = 0; i < count; i++) {
+			char c = content.charAt(i);
+			if (c < 0x80) {
+				add(c);
+			} else if (c < 0x800) {
+				add(0xc0 | (c >>> 6));
+				add(0x80 | (c & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				if (Character.isHighSurrogate(c) && i + 1 < count && Character.isLowSurrogate(content.charAt(i + 1))) {
+					int codePoint = Character.toCodePoint(c, content.charAt(++i));
+					add(0xf0 | (codePoint >>> 18));
+					add(0x80 | ((codePoint >>> 12) & 0x3f));
+					add(0x80 | ((codePoint >>> 6) & 0x3f));
+					add(0x80 | (codePoint & 0x3f));
+				} else {
+					// unpaired surrogate, replaced like String.getBytes does
+					add('?');
+				}
+			} else {
+				add(0xe0 | (c >>> 12));
+				add(0x80 | ((c >>> 6) & 0x3f));
+				add(0x80 | (c & 0x3f));
+			}
+		}
+		return self();
+	}
+
+	private void add(int b) {
+		buffer[buffered++] = (byte) b;
+		length++;
+		if (buffered == buffer.length) {
+			processBlock(bufferView, 0);
+			buffered = 0;
+		}
+	}
+
+	/**
+	 * start again, as if nothing was hashed
+	 */
+	public T reset() {
+		buffered = 0;
+		length = 0;
+		resetState();
+		return self();
+	}
+
+	public abstract byte[] hashAsBytes();
+
+	/**
+	 * lower case hex of {@link #hashAsBytes()}
+	 */
+	public String hashAsString() {
+		return Encodings.hex(hashAsBytes());
+	}
+
+	/**
+	 * bytes not processed yet, less than blockSize
+	 */
+	final byte[] buffer() {
+		return buffer;
+	}
+
+	final ByteBuffer bufferView() {
+		return bufferView;
+	}
+
+	final int buffered() {
+		return buffered;
+	}
+
+	/**
+	 * number of bytes hashed so far
+	 */
+	final long length() {
+		return length;
+	}
+
+	static ByteBuffer littleEndian(byte[] data) {
+		return ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * the position of content is not changed
+	 */
+	static ByteBuffer littleEndian(ByteBuffer content) {
+		return content.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	static byte[] bigEndian(long value) {
+		byte[] ret = new byte[8];
+		for (int i = 7; i >= 0; i--) {
+			ret[i] = (byte) value;
+			value >>>= 8;
+		}
+		return ret;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * hash large files with all cores: the memory mapped file is split into chunks, which are hashed in parallel
+ * and combined into a merkle tree
+ *
+ * the tree is built as in RFC 6962: a leaf is hash(0x00 | chunk), a node is hash(0x01 | left | right) and
+ * the left subtree of n chunks covers the largest power of two smaller than n. So the tree hash only depends
+ * on the content, the chunk size and the hash function. The plain sequential hash can be computed alongside
+ * for compatibility with checksums from other tools.
+ */
+@Value.Immutable
+public abstract class TreeHasher {
+	private static final byte LEAF = 0x00;
+	private static final byte NODE = 0x01;
+
+	@Value.Default
+	public int chunkSize() {
+		return 4 * 1024 * 1024;
+	}
+
+	@Value.Default
+	public Supplier<Hasher> hashers() {
+		return Hasher::instance;
+	}
+
+	@Value.Default
+	public ForkJoinPool pool() {
+		return ForkJoinPool.commonPool();
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(chunkSize() > 0, "chunkSize must be > 0: %s", chunkSize());
+	}
+
+	public byte[] treeHash(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			return invoke(new TreeTask(channel, size, 0, chunkCount(size)));
+		}
+	}
+
+	public byte[] sequentialHash(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			return sequentialHash(channel, channel.size());
+		}
+	}
+
+	/**
+	 * the sequential hash is computed while the tree is hashed by the other threads
+	 */
+	public FileHashes hash(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			ForkJoinTask<byte[]> sequential = pool().submit(() -> sequentialHash(channel, size));
+			byte[] treeHash = invoke(new TreeTask(channel, size, 0, chunkCount(size)));
+			return ImmutableFileHashes.builder()
+				.treeHash(treeHash)
+				.sequentialHash(join(sequential))
+				.build();
+		}
+	}
+
+	private byte[] sequentialHash(FileChannel channel, long size) throws IOException {
+		Hasher hasher = hashers().get();
+		for (long position = 0; position < size; position += chunkSize()) {
+			hasher.update(map(channel, size, position));
+		}
+		return hasher.hashAsBytes();
+	}
+
+	private long chunkCount(long size) {
+		return (size + chunkSize() - 1) / chunkSize();
+	}
+
+	private ByteBuffer map(FileChannel channel, long size, long position) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize(), size - position));
+	}
+
+	private byte[] invoke(TreeTask task) throws IOException {
+		return join(pool().submit(task));
+	}
+
+	private static byte[] join(ForkJoinTask<byte[]> task) throws IOException {
+		try {
+			return task.join();
+		}
+		catch (RuntimeException ex) {
+			for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+				if (cause instanceof UncheckedIOException) {
+					throw ((UncheckedIOException) cause).getCause();
+				}
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+			}
+			throw ex;
+		}
+	}
+
+	/**
+	 * hash of the chunks from (inclusive) to (exclusive)
+	 */
+	private class TreeTask extends RecursiveTask<byte[]> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long size;
+		private final long from;
+		private final long to;
+
+		private TreeTask(FileChannel channel, long size, long from, long to) {
+			this.channel = channel;
+			this.size = size;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected byte[] compute() {
+			long count = to - from;
+			if (count == 0) {
+				return hashers().get().hashAsBytes();
+			}
+			if (count == 1) {
+				try {
+					return hashers().get()
+						.update(new byte[] { LEAF })
+						.update(map(channel, size, from * chunkSize()))
+						.hashAsBytes();
+				}
+				catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			}
+			long split = from + Long.highestOneBit(count - 1);
+			TreeTask left = new TreeTask(channel, size, from, split);
+			TreeTask right = new TreeTask(channel, size, split, to);
+			left.fork();
+			byte[] rightHash = right.compute();
+			byte[] leftHash = left.join();
+			return hashers().get()
+				.update(new byte[] { NODE })
+				.update(leftHash)
+				.update(rightHash)
+				.hashAsBytes();
+		}
+	}
+
+	@Value.Immutable
+	public interface FileHashes {
+		byte[] treeHash();
+
+		byte[] sequentialHash();
+	}
+
+	public static ImmutableTreeHasher.Builder builder() {
+		return ImmutableTreeHasher.builder();
+	}
+
+	public static TreeHasher defaults() {
+		return builder().build();
+	}
+}
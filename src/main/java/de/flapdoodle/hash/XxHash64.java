@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import java.nio.ByteBuffer;
+
+/**
+ * xxHash64, a fast non cryptographic hash
+ *
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxhash spec</a>
+ */
+public final class XxHash64 extends StreamingHash<XxHash64> {
+	private static final long PRIME64_1 = 0x9E3779B185EBCA87L;
+	private static final long PRIME64_2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long PRIME64_3 = 0x165667B19E3779F9L;
+	private static final long PRIME64_4 = 0x85EBCA77C2B2AE63L;
+	private static final long PRIME64_5 = 0x27D4EB2F165667C5L;
+
+	private static final int STRIPE_LENGTH = 32;
+
+	private final long seed;
+	private long v1;
+	private long v2;
+	private long v3;
+	private long v4;
+
+	private XxHash64(long seed) {
+		super(STRIPE_LENGTH);
+		this.seed = seed;
+		resetState();
+	}
+
+	@Override
+	XxHash64 self() {
+		return this;
+	}
+
+	@Override
+	void resetState() {
+		v1 = seed + PRIME64_1 + PRIME64_2;
+		v2 = seed + PRIME64_2;
+		v3 = seed;
+		v4 = seed - PRIME64_1;
+	}
+
+	@Override
+	void processBlock(ByteBuffer block, int offset) {
+		v1 = round(v1, block.getLong(offset));
+		v2 = round(v2, block.getLong(offset + 8));
+		v3 = round(v3, block.getLong(offset + 16));
+		v4 = round(v4, block.getLong(offset + 24));
+	}
+
+	public long hashAsLong() {
+		long hash = length() >= STRIPE_LENGTH
+			? converge(v1, v2, v3, v4)
+			: seed + PRIME64_5;
+		return avalanche(remaining(hash + length(), bufferView(), 0, buffered()));
+	}
+
+	/**
+	 * big endian, the canonical representation
+	 */
+	@Override
+	public byte[] hashAsBytes() {
+		return bigEndian(hashAsLong());
+	}
+
+	private static long round(long acc, long input) {
+		return Long.rotateLeft(acc + input * PRIME64_2, 31) * PRIME64_1;
+	}
+
+	private static long mergeRound(long acc, long value) {
+		return (acc ^ round(0, value)) * PRIME64_1 + PRIME64_4;
+	}
+
+	private static long converge(long v1, long v2, long v3, long v4) {
+		long hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+		hash = mergeRound(hash, v1);
+		hash = mergeRound(hash, v2);
+		hash = mergeRound(hash, v3);
+		return mergeRound(hash, v4);
+	}
+
+	/**
+	 * less than a stripe from position to end
+	 */
+	private static long remaining(long hash, ByteBuffer data, int position, int end) {
+		while (position + 8 <= end) {
+			hash ^= round(0, data.getLong(position));
+			hash = Long.rotateLeft(hash, 27) * PRIME64_1 + PRIME64_4;
+			position += 8;
+		}
+		if (position + 4 <= end) {
+			hash ^= (data.getInt(position) & 0xffffffffL) * PRIME64_1;
+			hash = Long.rotateLeft(hash, 23) * PRIME64_2 + PRIME64_3;
+			position += 4;
+		}
+		while (position < end) {
+			hash ^= (data.get(position) & 0xff) * PRIME64_5;
+			hash = Long.rotateLeft(hash, 11) * PRIME64_1;
+			position++;
+		}
+		return hash;
+	}
+
+	/**
+	 * one shot without buffering
+	 */
+	private static long hash(ByteBuffer data, int offset, int length, long seed) {
+		int position = offset;
+		int end = offset + length;
+		long hash;
+		if (length >= STRIPE_LENGTH) {
+			long v1 = seed + PRIME64_1 + PRIME64_2;
+			long v2 = seed + PRIME64_2;
+			long v3 = seed;
+			long v4 = seed - PRIME64_1;
+			while (position + STRIPE_LENGTH <= end) {
+				v1 = round(v1, data.getLong(position));
+				v2 = round(v2, data.getLong(position + 8));
+				v3 = round(v3, data.getLong(position + 16));
+				v4 = round(v4, data.getLong(position + 24));
+				position += STRIPE_LENGTH;
+			}
+			hash = converge(v1, v2, v3, v4);
+		} else {
+			hash = seed + PRIME64_5;
+		}
+		return avalanche(remaining(hash + length, data, position, end));
+	}
+
+	private static long avalanche(long hash) {
+		hash ^= hash >>> 33;
+		hash *= PRIME64_2;
+		hash ^= hash >>> 29;
+		hash *= PRIME64_3;
+		hash ^= hash >>> 32;
+		return hash;
+	}
+
+	public static XxHash64 instance() {
+		return instance(0);
+	}
+
+	public static XxHash64 instance(long seed) {
+		return new XxHash64(seed);
+	}
+
+	public static long hash(byte[] content) {
+		return hash(content, 0);
+	}
+
+	public static long hash(byte[] content, long seed) {
+		return hash(littleEndian(content), 0, content.length, seed);
+	}
+
+	/**
+	 * the position of content is not changed
+	 */
+	public static long hash(ByteBuffer content) {
+		return hash(littleEndian(content), content.position(), content.remaining(), 0);
+	}
+
+	public static long hash(CharSequence content) {
+		return instance().update(content).hashAsLong();
+	}
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * extract compressed files and archives from a stream, so that they can be unpacked while they are downloaded
+ */
+public abstract class Archives {
+	private static final Logger logger = LoggerFactory.getLogger(Archives.class);
+
+	private static final int BUFFER_SIZE = 1024 * 8 * 8;
+
+	private Archives() {
+		// no instance
+	}
+
+	public enum Type {
+		/**
+		 * single compressed file
+		 */
+		GZIP(".gz"),
+		ZIP(".zip"),
+		TAR(".tar"),
+		TAR_GZ(".tar.gz", ".tgz");
+
+		private final String[] suffixes;
+
+		Type(String... suffixes) {
+			this.suffixes = suffixes;
+		}
+
+		public static Optional<Type> typeOf(String fileName) {
+			String lowerCase = fileName.toLowerCase();
+			Optional<Type> match = Optional.empty();
+			int matchLength = 0;
+			for (Type type : values()) {
+				for (String suffix : type.suffixes) {
+					if (lowerCase.endsWith(suffix) && suffix.length() > matchLength) {
+						match = Optional.of(type);
+						matchLength = suffix.length();
+					}
+				}
+			}
+			return match;
+		}
+	}
+
+	/**
+	 * @param destination file for {@link Type#GZIP}, directory otherwise
+	 */
+	static void extract(InputStream source, Type type, Path destination) throws IOException {
+		switch (type) {
+			case GZIP:
+				Files.copy(new GZIPInputStream(source, BUFFER_SIZE), destination);
+				break;
+			case ZIP:
+				extractZip(new ZipInputStream(source), destination);
+				break;
+			case TAR:
+				extractTar(new TarReader(source), destination);
+				break;
+			case TAR_GZ:
+				extractTar(new TarReader(new GZIPInputStream(source, BUFFER_SIZE)), destination);
+				break;
+			default:
+				throw new IllegalArgumentException("not supported: " + type);
+		}
+	}
+
+	private static void extractZip(ZipInputStream zip, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		ZipEntry entry;
+		while ((entry = zip.getNextEntry()) != null) {
+			Path path = resolveInside(directory, entry.getName());
+			if (entry.isDirectory()) {
+				createDirectoriesInside(directory, path);
+			} else {
+				createDirectoriesInside(directory, path.getParent());
+				Files.copy(zip, path);
+			}
+		}
+	}
+
+	private static void extractTar(TarReader tar, Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Optional<TarReader.Entry> next;
+		while ((next = tar.next()).isPresent()) {
+			TarReader.Entry entry = next.get();
+			Path path = resolveInside(directory, entry.name());
+			switch (entry.type()) {
+				case TarReader.DIRECTORY:
+					createDirectoriesInside(directory, path);
+					break;
+				case TarReader.REGULAR:
+					createDirectoriesInside(directory, path.getParent());
+					Files.copy(tar.content(), path);
+					setPermissions(path, entry.mode());
+					break;
+				case TarReader.SYMBOLIC_LINK: {
+					Path parent = createDirectoriesInside(directory, path.getParent());
+					Path linkName = path.getFileSystem().getPath(entry.linkName());
+					Preconditions.checkArgument(!linkName.isAbsolute(), "absolute link target: %s -> %s", entry.name(), linkName);
+					checkLinkTargetInside(directory.toRealPath(), parent.toRealPath(), linkName);
+					Files.createSymbolicLink(path, linkName);
+					break;
+				}
+				case TarReader.HARD_LINK: {
+					createDirectoriesInside(directory, path.getParent());
+					Path source = resolveInside(directory, entry.linkName());
+					Files.copy(resolveInside(directory.toRealPath(), source.toRealPath()), path);
+					break;
+				}
+				default:
+					logger.debug("skip {}", entry);
+			}
+		}
+	}
+
+	/**
+	 * entries must not escape the destination directory
+	 */
+	private static Path resolveInside(Path directory, String name) {
+		return resolveInside(directory, directory.resolve(name));
+	}
+
+	private static Path resolveInside(Path directory, Path path) {
+		Path normalized = path.normalize();
+		Preconditions.checkArgument(normalized.startsWith(directory.normalize()) && !normalized.equals(directory.normalize()), "entry outside of destination: %s", path);
+		return normalized;
+	}
+
+	/**
+	 * the link target is resolved one element at a time like the file system would do it, because '..' after
+	 * a link extracted before does not go back to the lexical parent. A missing element could be extracted as
+	 * link later on, so no '..' may follow it.
+	 */
+	private static void checkLinkTargetInside(Path realDestination, Path realParent, Path linkName) throws IOException {
+		Path current = realParent;
+		boolean missing = false;
+		for (Path element : linkName) {
+			String name = element.toString();
+			if (name.equals(".")) {
+				continue;
+			}
+			if (name.equals("..")) {
+				Preconditions.checkArgument(!missing, "link target outside of destination: %s", linkName);
+				current = current.getParent();
+			} else {
+				current = current.resolve(name);
+			}
+			Preconditions.checkArgument(current != null && current.startsWith(realDestination), "link target outside of destination: %s", linkName);
+			if (!missing && Files.exists(current)) {
+				current = current.toRealPath();
+				Preconditions.checkArgument(current.startsWith(realDestination), "link target outside of destination: %s", linkName);
+			} else {
+				Preconditions.checkArgument(!Files.isSymbolicLink(current), "link target over dangling link: %s", linkName);
+				missing = true;
+			}
+		}
+	}
+
+	/**
+	 * a path inside the destination could point outside over symbolic links extracted before, so the real path
+	 * of the deepest existing parent must be inside the destination, before anything is created
+	 *
+	 * @return directory
+	 */
+	private static Path createDirectoriesInside(Path destination, Path directory) throws IOException {
+		Path realDestination = destination.toRealPath();
+		Path existing = directory;
+		while (!Files.exists(existing)) {
+			existing = existing.getParent();
+		}
+		Path realExisting = existing.toRealPath();
+		Preconditions.checkArgument(realExisting.startsWith(realDestination), "entry outside of destination: %s -> %s", directory, realExisting);
+		return Files.createDirectories(directory);
+	}
+
+	private static void setPermissions(Path path, int mode) throws IOException {
+		if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			return;
+		}
+		Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+		PosixFilePermission[] bits = {
+			PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE, PosixFilePermission.OTHERS_READ,
+			PosixFilePermission.GROUP_EXECUTE, PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+			PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_READ
+		};
+		for (int i = 0; i < bits.length; i++) {
+			if ((mode & (1 << i)) != 0) {
+				permissions.add(bits[i]);
+			}
+		}
+		// keep the file readable and writable for the owner
+		permissions.add(PosixFilePermission.OWNER_READ);
+		permissions.add(PosixFilePermission.OWNER_WRITE);
+		Files.setPosixFilePermissions(path, permissions);
+	}
+
+	static void deleteAll(Path path) throws IOException {
+		if (!Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+			return;
+		}
+		Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+				Files.delete(file);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+				Files.delete(dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+}
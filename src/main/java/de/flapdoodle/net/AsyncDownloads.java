@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.types.ThrowingFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * non blocking downloads, each download runs in its own task of a bounded executor
+ * (or a virtual thread, if the runtime supports it)
+ *
+ * the number of concurrent downloads from the same host is limited by maxPerHost,
+ * downloads waiting for their host are queued and do not occupy a worker thread.
+ */
+public class AsyncDownloads implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(AsyncDownloads.class);
+
+	private final ExecutorService executor;
+	private final int maxPerHost;
+	private final ThrowingFunction<URL, URLConnection, IOException> connectionFactory;
+	// a queue is only changed in compute, and removed if nothing is running
+	private final ConcurrentMap<String, HostQueue> hostQueues = new ConcurrentHashMap<>();
+	private final Set<CompletableFuture<Path>> pending = ConcurrentHashMap.newKeySet();
+	private volatile boolean closed = false;
+
+	AsyncDownloads(ExecutorService executor, int maxPerHost, ThrowingFunction<URL, URLConnection, IOException> connectionFactory) {
+		Preconditions.checkArgument(maxPerHost > 0, "maxPerHost must be > 0: %s", maxPerHost);
+		this.executor = executor;
+		this.maxPerHost = maxPerHost;
+		this.connectionFactory = connectionFactory;
+	}
+
+	public CompletableFuture<Path> downloadIntoTempFile(URL url, URLConnections.DownloadCopyListener copyListener) {
+		return submit(url, copyListener, (connection, listener) -> URLConnections.downloadIntoTempFile(connection, listener), Files::deleteIfExists);
+	}
+
+	public CompletableFuture<Path> downloadIntoFile(URL url, Path destination, URLConnections.DownloadCopyListener copyListener) {
+		return submit(url, copyListener, (connection, listener) -> {
+			Preconditions.checkArgument(!Files.exists(destination), "destination exists: %s", destination);
+			Path tempFile = URLConnections.downloadIntoTempFile(connection, listener);
+			if (listener.cancelled()) {
+				Files.deleteIfExists(tempFile);
+				throw new InterruptedIOException("download of " + url + " cancelled");
+			}
+			URLConnections.move(tempFile, destination);
+			return destination;
+		}, it -> {
+			// cancelled after the file was moved into its destination
+		});
+	}
+
+	private CompletableFuture<Path> submit(
+		URL url,
+		URLConnections.DownloadCopyListener copyListener,
+		Download download,
+		CleanUp onCancelledResult
+	) {
+		CompletableFuture<Path> result = new CompletableFuture<>();
+		CancelAwareListener listener = new CancelAwareListener(result, copyListener);
+
+		FutureTask<Void> task = new FutureTask<>(() -> {
+			try {
+				Path path = download.download(connectionFactory.apply(url), listener);
+				if (!result.complete(path)) {
+					onCancelledResult.cleanUp(path);
+				}
+			}
+			catch (Throwable e) {
+				if (!result.isCancelled()) {
+					logger.debug("download of {} failed", url, e);
+				}
+				result.completeExceptionally(e);
+			}
+		}, null);
+
+		pending.add(result);
+		result.whenComplete((path, ex) -> {
+			pending.remove(result);
+			if (result.isCancelled()) {
+				task.cancel(true);
+			}
+		});
+
+		if (closed) {
+			result.completeExceptionally(new RejectedExecutionException("closed"));
+			return result;
+		}
+
+		schedule(url.getHost(), new Job(task, result));
+		return result;
+	}
+
+	/**
+	 * cancels all downloads, which are not finished yet
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		executor.shutdownNow();
+		for (CompletableFuture<Path> result : pending) {
+			result.cancel(true);
+		}
+		hostQueues.clear();
+	}
+
+	int hostsWithDownloads() {
+		return hostQueues.size();
+	}
+
+	private void schedule(String host, Job job) {
+		Job[] start = new Job[1];
+		hostQueues.compute(host, (it, queue) -> {
+			HostQueue hostQueue = queue != null ? queue : new HostQueue();
+			if (hostQueue.running < maxPerHost) {
+				hostQueue.running++;
+				start[0] = job;
+			} else {
+				hostQueue.waiting.add(job);
+			}
+			return hostQueue;
+		});
+		if (start[0] != null) {
+			execute(host, start[0]);
+		}
+	}
+
+	private void execute(String host, Job job) {
+		Job next = job;
+		while (next != null) {
+			Job current = next;
+			try {
+				executor.execute(() -> {
+					try {
+						// a cancelled task does nothing
+						current.task.run();
+					}
+					finally {
+						Job following = finished(host);
+						if (following != null) {
+							execute(host, following);
+						}
+					}
+				});
+				return;
+			}
+			catch (RejectedExecutionException ex) {
+				current.result.completeExceptionally(ex);
+				next = finished(host);
+			}
+		}
+	}
+
+	/**
+	 * @return next waiting job of this host, which takes over the slot of the finished one
+	 */
+	private Job finished(String host) {
+		Job[] next = new Job[1];
+		hostQueues.computeIfPresent(host, (it, hostQueue) -> {
+			next[0] = hostQueue.waiting.poll();
+			if (next[0] == null) {
+				hostQueue.running--;
+			}
+			return hostQueue.running > 0 ? hostQueue : null;
+		});
+		return next[0];
+	}
+
+	/**
+	 * stops the download with the next transferred block, if the future was cancelled
+	 */
+	private static class CancelAwareListener implements URLConnections.DownloadCopyListener {
+		private final CompletableFuture<?> result;
+		private final URLConnections.DownloadCopyListener delegate;
+
+		private CancelAwareListener(CompletableFuture<?> result, URLConnections.DownloadCopyListener delegate) {
+			this.result = result;
+			this.delegate = delegate;
+		}
+
+		private boolean cancelled() {
+			return result.isCancelled();
+		}
+
+		@Override
+		public void downloaded(URL url, long bytesCopied, long contentLength) {
+			if (cancelled()) {
+				throw new CancellationException("download of " + url + " cancelled");
+			}
+			delegate.downloaded(url, bytesCopied, contentLength);
+		}
+	}
+
+	/**
+	 * a task is only passed to the executor, if less than maxPerHost tasks of its host are running,
+	 * a finished task passes its slot to the next waiting one
+	 */
+	private static class HostQueue {
+		private final Deque<Job> waiting = new ArrayDeque<>();
+		private int running = 0;
+	}
+
+	private static class Job {
+		private final Runnable task;
+		private final CompletableFuture<?> result;
+
+		private Job(Runnable task, CompletableFuture<?> result) {
+			this.task = task;
+			this.result = result;
+		}
+	}
+
+	@FunctionalInterface
+	private interface Download {
+		Path download(URLConnection connection, CancelAwareListener copyListener) throws IOException;
+	}
+
+	@FunctionalInterface
+	private interface CleanUp {
+		void cleanUp(Path path) throws IOException;
+	}
+
+	public static AsyncDownloads withThreads(int maxConcurrent, int maxPerHost) {
+		Preconditions.checkArgument(maxConcurrent > 0, "maxConcurrent must be > 0: %s", maxConcurrent);
+		return new AsyncDownloads(Executors.newFixedThreadPool(maxConcurrent, daemonThreads()), maxPerHost, URLConnections::urlConnectionOf);
+	}
+
+	/**
+	 * uses virtual threads if available (java 21+), a thread pool bounded by the number of processors otherwise
+	 */
+	public static AsyncDownloads withVirtualThreads(int maxPerHost) {
+		ExecutorService executor = virtualThreadPerTaskExecutor()
+			.orElseGet(() -> boundedThreadPool(Math.max(maxPerHost, 4 * Runtime.getRuntime().availableProcessors())));
+		return new AsyncDownloads(executor, maxPerHost, URLConnections::urlConnectionOf);
+	}
+
+	private static ExecutorService boundedThreadPool(int maxThreads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<>(), daemonThreads());
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	static Optional<ExecutorService> virtualThreadPerTaskExecutor() {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return Optional.of((ExecutorService) factory.invoke(null));
+		}
+		catch (ReflectiveOperationException | RuntimeException e) {
+			return Optional.empty();
+		}
+	}
+
+	private static ThreadFactory daemonThreads() {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "async-download-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+}
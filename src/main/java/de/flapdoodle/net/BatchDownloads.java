@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.types.Either;
+import de.flapdoodle.types.ThrowingFunction;
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * download a set of jobs with a global and a per host limit of concurrent downloads
+ *
+ * jobs are started by priority (higher first), then by expected size (smaller first, unknown last).
+ * If the next job has to wait for its host, a job for another host is started instead.
+ */
+public class BatchDownloads {
+	private static final Logger logger = LoggerFactory.getLogger(BatchDownloads.class);
+
+	private static final Comparator<Job> JOB_ORDER = Comparator.comparing(Job::priority).reversed()
+		.thenComparing(job -> job.expectedSize().orElse(Long.MAX_VALUE));
+
+	private final int maxConcurrent;
+	private final int maxPerHost;
+	private final ThrowingFunction<URL, URLConnection, IOException> connectionFactory;
+
+	BatchDownloads(int maxConcurrent, int maxPerHost, ThrowingFunction<URL, URLConnection, IOException> connectionFactory) {
+		Preconditions.checkArgument(maxConcurrent > 0, "maxConcurrent must be > 0: %s", maxConcurrent);
+		Preconditions.checkArgument(maxPerHost > 0, "maxPerHost must be > 0: %s", maxPerHost);
+		this.maxConcurrent = maxConcurrent;
+		this.maxPerHost = maxPerHost;
+		this.connectionFactory = connectionFactory;
+	}
+
+	/**
+	 * @return destination or failure for each job, in the order of the jobs
+	 */
+	public Map<Job, Either<Path, Exception>> downloadAll(Collection<? extends Job> jobs, BatchListener listener) throws InterruptedException {
+		Map<Job, Either<Path, Exception>> results = Collections.synchronizedMap(new LinkedHashMap<>());
+		jobs.forEach(job -> results.put(job, null));
+
+		ExecutorService executor = Executors.newFixedThreadPool(maxConcurrent, daemonThreads());
+		try {
+			Scheduler scheduler = new Scheduler(jobs, executor, listener, results);
+			scheduler.dispatch();
+			scheduler.await();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		return Collections.unmodifiableMap(new LinkedHashMap<>(results));
+	}
+
+	@FunctionalInterface
+	public interface BatchListener {
+		/**
+		 * called on each transferred block of any download
+		 *
+		 * @param bytesCopied sum of all bytes copied so far
+		 * @param contentLength sum of all content lengths, -1 if not all known yet
+		 * @param finishedJobs jobs done (successful or not)
+		 * @param jobs number of jobs
+		 * @param bytesPerSecond average throughput since start
+		 */
+		void progress(long bytesCopied, long contentLength, int finishedJobs, int jobs, long bytesPerSecond);
+	}
+
+	@Value.Immutable
+	public static abstract class Job {
+		@Value.Parameter
+		public abstract URL url();
+
+		@Value.Parameter
+		public abstract Path destination();
+
+		@Value.Default
+		public int priority() {
+			return 0;
+		}
+
+		public abstract Optional<Long> expectedSize();
+
+		public static ImmutableJob of(URL url, Path destination) {
+			return ImmutableJob.of(url, destination);
+		}
+	}
+
+	private class Scheduler {
+		private final LinkedList<Job> pending;
+		private final ExecutorService executor;
+		private final BatchListener listener;
+		private final Map<Job, Either<Path, Exception>> results;
+		private final CountDownLatch done;
+		private final Map<String, Integer> runningPerHost = new HashMap<>();
+		private final Map<Job, long[]> progressOfJob = new HashMap<>();
+		private final int jobCount;
+		private final long start = System.nanoTime();
+
+		private int running = 0;
+		private int finished = 0;
+		private long bytesCopied = 0;
+
+		Scheduler(Collection<? extends Job> jobs, ExecutorService executor, BatchListener listener, Map<Job, Either<Path, Exception>> results) {
+			this.pending = new LinkedList<>(jobs);
+			this.pending.sort(JOB_ORDER);
+			this.executor = executor;
+			this.listener = listener;
+			this.results = results;
+			this.jobCount = jobs.size();
+			this.done = new CountDownLatch(jobs.size());
+		}
+
+		synchronized void dispatch() {
+			Iterator<Job> iterator = pending.iterator();
+			while (running < maxConcurrent && iterator.hasNext()) {
+				Job job = iterator.next();
+				String host = job.url().getHost();
+				int runningForHost = runningPerHost.getOrDefault(host, 0);
+				if (runningForHost < maxPerHost) {
+					iterator.remove();
+					runningPerHost.put(host, runningForHost + 1);
+					running++;
+					executor.submit(() -> run(job));
+				}
+			}
+		}
+
+		private void run(Job job) {
+			Either<Path, Exception> result;
+			try {
+				URLConnections.downloadIntoFile(connectionFactory.apply(job.url()), job.destination(),
+					(url, copied, contentLength) -> progress(job, copied, contentLength));
+				result = Either.left(job.destination());
+			}
+			catch (Throwable ex) {
+				logger.debug("download of {} failed", job.url(), ex);
+				result = Either.right(ex instanceof Exception
+					? (Exception) ex
+					: new IllegalStateException("download of " + job.url() + " failed", ex));
+			}
+			results.put(job, result);
+			try {
+				finished(job);
+			}
+			finally {
+				done.countDown();
+				dispatch();
+			}
+		}
+
+		private synchronized void progress(Job job, long copied, long contentLength) {
+			long[] copiedAndLength = progressOfJob.computeIfAbsent(job, it -> new long[2]);
+			bytesCopied = bytesCopied + copied - copiedAndLength[0];
+			copiedAndLength[0] = copied;
+			copiedAndLength[1] = contentLength;
+			notifyListener();
+		}
+
+		private synchronized void finished(Job job) {
+			String host = job.url().getHost();
+			runningPerHost.put(host, runningPerHost.get(host) - 1);
+			running--;
+			finished++;
+			notifyListener();
+		}
+
+		private void notifyListener() {
+			long contentLength = 0;
+			if (progressOfJob.size() < jobCount) {
+				contentLength = -1;
+			} else {
+				for (long[] copiedAndLength : progressOfJob.values()) {
+					if (copiedAndLength[1] == -1) {
+						contentLength = -1;
+						break;
+					}
+					contentLength = contentLength + copiedAndLength[1];
+				}
+			}
+			double seconds = Math.max(1, System.nanoTime() - start) / 1_000_000_000.0;
+			long bytesPerSecond = (long) (bytesCopied / seconds);
+			listener.progress(bytesCopied, contentLength, finished, jobCount, bytesPerSecond);
+		}
+
+		void await() throws InterruptedException {
+			done.await();
+		}
+	}
+
+	private static ThreadFactory daemonThreads() {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "batch-download-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	public static BatchDownloads of(int maxConcurrent, int maxPerHost) {
+		return new BatchDownloads(maxConcurrent, maxPerHost, URLConnections::urlConnectionOf);
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * direct buffers with a capacity of a power of two, released buffers are kept for reuse
+ * (up to maxPooledPerSize for each capacity)
+ */
+public class ByteBufferPool {
+	private static final int SIZES = 32;
+
+	private final int maxPooledPerSize;
+	private final AtomicReferenceArray<BlockingQueue<ByteBuffer>> pooled = new AtomicReferenceArray<>(SIZES);
+
+	ByteBufferPool(int maxPooledPerSize) {
+		Preconditions.checkArgument(maxPooledPerSize > 0, "maxPooledPerSize must be > 0: %s", maxPooledPerSize);
+		this.maxPooledPerSize = maxPooledPerSize;
+	}
+
+	/**
+	 * @return cleared buffer, limit set to minCapacity
+	 */
+	ByteBuffer acquire(int minCapacity) {
+		Preconditions.checkArgument(minCapacity >= 0 && minCapacity <= 1 << (SIZES - 2), "minCapacity out of range: %s", minCapacity);
+		int size = sizeOf(minCapacity);
+		ByteBuffer buffer = pooledOf(size).poll();
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(1 << size);
+		}
+		buffer.clear();
+		buffer.limit(minCapacity);
+		return buffer;
+	}
+
+	void release(ByteBuffer buffer) {
+		int capacity = buffer.capacity();
+		Preconditions.checkArgument(buffer.isDirect() && Integer.bitCount(capacity) == 1, "buffer not from this pool: %s", buffer);
+		pooledOf(Integer.numberOfTrailingZeros(capacity)).offer(buffer);
+	}
+
+	int pooled(int capacity) {
+		return pooledOf(sizeOf(capacity)).size();
+	}
+
+	private BlockingQueue<ByteBuffer> pooledOf(int size) {
+		BlockingQueue<ByteBuffer> queue = pooled.get(size);
+		if (queue == null) {
+			pooled.compareAndSet(size, null, new ArrayBlockingQueue<>(maxPooledPerSize));
+			queue = pooled.get(size);
+		}
+		return queue;
+	}
+
+	private static int sizeOf(int capacity) {
+		return capacity <= 1
+			? 0
+			: 32 - Integer.numberOfLeadingZeros(capacity - 1);
+	}
+
+	public static ByteBufferPool of(int maxPooledPerSize) {
+		return new ByteBufferPool(maxPooledPerSize);
+	}
+
+	/**
+	 * read only view of a pooled buffer, must be closed to give the buffer back to the pool
+	 */
+	public static class PooledBuffer implements AutoCloseable {
+		private final ByteBufferPool pool;
+		private final ByteBuffer pooledBuffer;
+		private final ByteBuffer buffer;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		PooledBuffer(ByteBufferPool pool, ByteBuffer pooledBuffer) {
+			this.pool = pool;
+			this.pooledBuffer = pooledBuffer;
+			this.buffer = pooledBuffer.asReadOnlyBuffer();
+		}
+
+		/**
+		 * must not be used after close
+		 */
+		public ByteBuffer buffer() {
+			Preconditions.checkArgument(!released.get(), "already released");
+			return buffer;
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				pool.release(pooledBuffer);
+			}
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.hash.Hasher;
+import org.immutables.value.Value;
+
+import java.util.function.Supplier;
+
+/**
+ * expected hash of a download
+ */
+@Value.Immutable
+public abstract class Checksum {
+	@Value.Parameter
+	public abstract Algorithm algorithm();
+
+	@Value.Parameter
+	public abstract String hash();
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(!hash().isEmpty(), "hash is empty");
+	}
+
+	public Hasher hasher() {
+		return algorithm().hasher();
+	}
+
+	public boolean matches(String hash) {
+		return hash().equalsIgnoreCase(hash);
+	}
+
+	public enum Algorithm {
+		SHA256(Hasher::instance),
+		MD5(Hasher::md5Instance);
+
+		private final Supplier<Hasher> hasherFactory;
+
+		Algorithm(Supplier<Hasher> hasherFactory) {
+			this.hasherFactory = hasherFactory;
+		}
+
+		public Hasher hasher() {
+			return hasherFactory.get();
+		}
+	}
+
+	public static Checksum of(Algorithm algorithm, String hash) {
+		return ImmutableChecksum.of(algorithm, hash);
+	}
+
+	public static Checksum sha256(String hash) {
+		return of(Algorithm.SHA256, hash);
+	}
+
+	public static Checksum md5(String hash) {
+		return of(Algorithm.MD5, hash);
+	}
+}
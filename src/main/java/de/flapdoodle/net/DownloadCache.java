@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.hash.Hasher;
+import de.flapdoodle.types.ThrowingFunction;
+import de.flapdoodle.types.ThrowingSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * directory backed download cache
+ *
+ * content is stored by its sha256 hash, the entry for an url points to the content hash and
+ * keeps ETag and Last-Modified for revalidation. The least recently used content is evicted if the
+ * cache gets bigger than maxSize. Downloads of the same url are serialized with a file lock, so that
+ * different processes do not download the same thing twice. Cached content is copied into the destination,
+ * unless {@link #withHardLinks()} is used.
+ */
+public class DownloadCache {
+	private static final Logger logger = LoggerFactory.getLogger(DownloadCache.class);
+
+	// file locks are held by the process, so threads are serialized with a fixed set of locks
+	private static final ReentrantLock[] IN_PROCESS_LOCKS = inProcessLocks(64);
+
+	private static final String EVICTION_LOCK = "eviction";
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static final String CONTENT_HASH = "contentHash";
+	private static final String URL = "url";
+	private static final String ETAG = "etag";
+	private static final String LAST_MODIFIED = "lastModified";
+
+	private final Path directory;
+	private final long maxSize;
+	private final boolean useHardLinks;
+	private final ThrowingFunction<URL, URLConnection, IOException> connectionFactory;
+
+	DownloadCache(Path directory, long maxSize, boolean useHardLinks, ThrowingFunction<URL, URLConnection, IOException> connectionFactory) throws IOException {
+		Preconditions.checkArgument(maxSize > 0, "maxSize must be > 0: %s", maxSize);
+		this.directory = directory.toAbsolutePath();
+		this.maxSize = maxSize;
+		this.useHardLinks = useHardLinks;
+		this.connectionFactory = connectionFactory;
+		Files.createDirectories(entries());
+		Files.createDirectories(blobs());
+	}
+
+	/**
+	 * hard link instead of copy cached files into the destination (if possible), the destination shares its content
+	 * and last modified time with the cache, so it must not be modified
+	 */
+	public DownloadCache withHardLinks() throws IOException {
+		return new DownloadCache(directory, maxSize, true, connectionFactory);
+	}
+
+	public void downloadIntoFile(URL url, Path destination, URLConnections.DownloadCopyListener copyListener) throws IOException {
+		Preconditions.checkArgument(!Files.exists(destination), "destination exists: %s", destination);
+
+		String key = Hasher.withInstance(hasher -> hasher.update(url.toString()).hashAsString());
+		withLock(key, () -> {
+			for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+				Path blob = cachedOrDownloaded(url, key, copyListener);
+				if (linkedOrCopied(blob, destination)) {
+					return null;
+				}
+				logger.debug("{} was evicted, download {} again", blob, url);
+			}
+			throw new IOException("content of " + url + " was evicted " + MAX_ATTEMPTS + " times before it could be used");
+		});
+	}
+
+	/**
+	 * eviction for an other url may have removed the content since it was downloaded, and must not while it is
+	 * linked or copied, downloads are not done while holding the eviction lock
+	 */
+	private boolean linkedOrCopied(Path blob, Path destination) throws IOException {
+		return withLock(EVICTION_LOCK, () -> {
+			if (!Files.exists(blob)) {
+				return false;
+			}
+			linkOrCopy(blob, destination);
+			evict(blob);
+			return true;
+		});
+	}
+
+	private Path cachedOrDownloaded(URL url, String key, URLConnections.DownloadCopyListener copyListener) throws IOException {
+		Path entryFile = entries().resolve(key + ".properties");
+		Optional<Properties> entry = readEntry(entryFile)
+			.filter(it -> url.toString().equals(it.getProperty(URL)))
+			.filter(it -> Files.exists(blobOf(it.getProperty(CONTENT_HASH))));
+
+		URLConnection connection = connectionFactory.apply(url);
+		entry.ifPresent(it -> {
+			Optional.ofNullable(it.getProperty(ETAG)).ifPresent(etag -> connection.setRequestProperty("If-None-Match", etag));
+			Optional.ofNullable(it.getProperty(LAST_MODIFIED)).ifPresent(lastModified -> connection.setRequestProperty("If-Modified-Since", lastModified));
+		});
+
+		if (entry.isPresent() && connection instanceof HttpURLConnection
+			&& ((HttpURLConnection) connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+			Path blob = blobOf(entry.get().getProperty(CONTENT_HASH));
+			logger.debug("{} not modified, use {}", url, blob);
+			long size = Files.size(blob);
+			copyListener.downloaded(url, 0, size);
+			copyListener.downloaded(url, size, size);
+			return touch(blob);
+		}
+
+		Hasher hasher = Hasher.instance();
+		Path tempFile = URLConnections.downloadIntoTempFile(connection, copyListener, hasher);
+		String contentHash = hasher.hashAsString();
+		Path blob = blobOf(contentHash);
+		if (Files.exists(blob)) {
+			Files.delete(tempFile);
+		} else {
+			URLConnections.move(tempFile, blob);
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty(URL, url.toString());
+		properties.setProperty(CONTENT_HASH, contentHash);
+		Optional.ofNullable(connection.getHeaderField("ETag")).ifPresent(it -> properties.setProperty(ETAG, it));
+		Optional.ofNullable(connection.getHeaderField("Last-Modified")).ifPresent(it -> properties.setProperty(LAST_MODIFIED, it));
+		writeEntry(entryFile, properties);
+
+		return touch(blob);
+	}
+
+	private void linkOrCopy(Path blob, Path destination) throws IOException {
+		if (useHardLinks) {
+			try {
+				Files.createLink(destination, blob);
+				return;
+			}
+			catch (FileAlreadyExistsException ex) {
+				throw ex;
+			}
+			catch (IOException | UnsupportedOperationException ex) {
+				logger.debug("could not link {} to {}, copy instead", blob, destination, ex);
+			}
+		}
+		Files.copy(blob, destination);
+	}
+
+	private void evict(Path inUse) throws IOException {
+		List<Path> blobs;
+		try (Stream<Path> files = Files.list(blobs())) {
+			blobs = files.filter(Files::isRegularFile)
+				.sorted(Comparator.comparing(DownloadCache::lastModified))
+				.collect(Collectors.toList());
+		}
+
+		long size = 0;
+		for (Path blob : blobs) {
+			size = size + Files.size(blob);
+		}
+
+		List<Path> candidates = new ArrayList<>(blobs);
+		candidates.remove(inUse);
+		for (Path candidate : candidates) {
+			if (size <= maxSize) {
+				break;
+			}
+			long candidateSize = Files.size(candidate);
+			if (Files.deleteIfExists(candidate)) {
+				logger.debug("evict {}", candidate);
+				size = size - candidateSize;
+			}
+		}
+	}
+
+	private <T> T withLock(String key, ThrowingSupplier<T, IOException> action) throws IOException {
+		Path lockFile = entries().resolve(key + ".lock");
+		ReentrantLock inProcessLock = IN_PROCESS_LOCKS[Math.floorMod(lockFile.hashCode(), IN_PROCESS_LOCKS.length)];
+		inProcessLock.lock();
+		try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			FileLock fileLock = channel.lock();
+			try {
+				return action.get();
+			}
+			finally {
+				fileLock.release();
+			}
+		}
+		finally {
+			inProcessLock.unlock();
+		}
+	}
+
+	private static ReentrantLock[] inProcessLocks(int count) {
+		ReentrantLock[] locks = new ReentrantLock[count];
+		for (int i = 0; i < count; i++) {
+			locks[i] = new ReentrantLock();
+		}
+		return locks;
+	}
+
+	private Path entries() {
+		return directory.resolve("entries");
+	}
+
+	private Path blobs() {
+		return directory.resolve("blobs");
+	}
+
+	private Path blobOf(String contentHash) {
+		return blobs().resolve(contentHash);
+	}
+
+	private static Path touch(Path blob) throws IOException {
+		Files.setLastModifiedTime(blob, FileTime.fromMillis(System.currentTimeMillis()));
+		return blob;
+	}
+
+	private static FileTime lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		}
+		catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static Optional<Properties> readEntry(Path entryFile) {
+		if (!Files.exists(entryFile)) {
+			return Optional.empty();
+		}
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(entryFile)) {
+			properties.load(in);
+			return Optional.of(properties);
+		}
+		catch (IOException e) {
+			logger.warn("could not read cache entry {}", entryFile, e);
+			return Optional.empty();
+		}
+	}
+
+	private static void writeEntry(Path entryFile, Properties properties) throws IOException {
+		Path tempFile = entryFile.resolveSibling(entryFile.getFileName() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tempFile)) {
+			properties.store(out, "download cache entry");
+		}
+		Files.move(tempFile, entryFile, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	public static DownloadCache of(Path directory, long maxSize) throws IOException {
+		return new DownloadCache(directory, maxSize, false, URLConnections::urlConnectionOf);
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * adapters for {@link URLConnections.DownloadCopyListener}, each adapter is meant for one download at a time
+ */
+public abstract class DownloadCopyListeners {
+
+	private DownloadCopyListeners() {
+		// no instance
+	}
+
+	/**
+	 * limits the bandwidth of the download by blocking the transfer in each callback,
+	 * bytes reported with the first callback (e.g. of a resumed download) are not counted
+	 */
+	public static URLConnections.DownloadCopyListener throttled(TokenBucket bucket, URLConnections.DownloadCopyListener delegate) {
+		return new Throttled(bucket, delegate);
+	}
+
+	/**
+	 * forwards the first and the last (if contentLength is known) callback and at most one callback per interval
+	 */
+	public static URLConnections.DownloadCopyListener everyInterval(long interval, TimeUnit unit, URLConnections.DownloadCopyListener delegate) {
+		Preconditions.checkArgument(interval > 0, "interval must be > 0: %s", interval);
+		return new EveryInterval(unit.toNanos(interval), delegate);
+	}
+
+	/**
+	 * forwards the first and the last callback and one callback for each percent step,
+	 * does forward every callback if the content length is unknown
+	 */
+	public static URLConnections.DownloadCopyListener everyPercent(int percentStep, URLConnections.DownloadCopyListener delegate) {
+		Preconditions.checkArgument(percentStep > 0 && percentStep <= 100, "percentStep must be 1..100: %s", percentStep);
+		return new EveryPercent(percentStep, delegate);
+	}
+
+	private static boolean firstOrLast(long bytesCopied, long contentLength) {
+		return bytesCopied == 0 || bytesCopied == contentLength;
+	}
+
+	static class Throttled implements URLConnections.DownloadCopyListener {
+		private final TokenBucket bucket;
+		private final URLConnections.DownloadCopyListener delegate;
+		private long lastBytesCopied = -1;
+
+		private Throttled(TokenBucket bucket, URLConnections.DownloadCopyListener delegate) {
+			this.bucket = bucket;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void downloaded(URL url, long bytesCopied, long contentLength) {
+			long block = lastBytesCopied != -1 ? bytesCopied - lastBytesCopied : 0;
+			lastBytesCopied = bytesCopied;
+			if (block > 0) {
+				bucket.acquire(block);
+			}
+			delegate.downloaded(url, bytesCopied, contentLength);
+		}
+	}
+
+	static class EveryInterval implements URLConnections.DownloadCopyListener {
+		private final long intervalNanos;
+		private final URLConnections.DownloadCopyListener delegate;
+		private long lastCall;
+		private boolean called = false;
+
+		private EveryInterval(long intervalNanos, URLConnections.DownloadCopyListener delegate) {
+			this.intervalNanos = intervalNanos;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void downloaded(URL url, long bytesCopied, long contentLength) {
+			long now = System.nanoTime();
+			if (!called || firstOrLast(bytesCopied, contentLength) || now - lastCall >= intervalNanos) {
+				called = true;
+				lastCall = now;
+				delegate.downloaded(url, bytesCopied, contentLength);
+			}
+		}
+	}
+
+	static class EveryPercent implements URLConnections.DownloadCopyListener {
+		private final int percentStep;
+		private final URLConnections.DownloadCopyListener delegate;
+		private long lastStep = -1;
+
+		private EveryPercent(int percentStep, URLConnections.DownloadCopyListener delegate) {
+			this.percentStep = percentStep;
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void downloaded(URL url, long bytesCopied, long contentLength) {
+			if (contentLength <= 0) {
+				delegate.downloaded(url, bytesCopied, contentLength);
+				return;
+			}
+			long step = bytesCopied * 100 / contentLength / percentStep;
+			if (step != lastStep || firstOrLast(bytesCopied, contentLength)) {
+				lastStep = step;
+				delegate.downloaded(url, bytesCopied, contentLength);
+			}
+		}
+	}
+}
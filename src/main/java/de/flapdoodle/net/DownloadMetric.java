@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.immutables.value.Value;
+
+import java.net.URL;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * measurements of one download
+ */
+@Value.Immutable
+public abstract class DownloadMetric {
+	public abstract URL url();
+
+	/**
+	 * proxy (Proxy.toString()), empty if connected directly
+	 */
+	public abstract Optional<String> proxy();
+
+	/**
+	 * nanos until the response headers are read, -1 if the connection failed
+	 */
+	public abstract long timeToFirstByte();
+
+	public abstract long duration();
+
+	public abstract long bytes();
+
+	@Value.Default
+	public int retries() {
+		return 0;
+	}
+
+	/**
+	 * exception class and message, empty if the download succeeded
+	 */
+	public abstract Optional<String> failure();
+
+	@Value.Auxiliary
+	public boolean failed() {
+		return failure().isPresent();
+	}
+
+	@Value.Auxiliary
+	public long bytesPerSecond() {
+		return duration() > 0
+			? (long) (bytes() * (double) TimeUnit.SECONDS.toNanos(1) / duration())
+			: 0;
+	}
+
+	public static ImmutableDownloadMetric.Builder builder() {
+		return ImmutableDownloadMetric.builder();
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import java.util.Map;
+
+/**
+ * jmx view of {@link InMemoryDownloadMetrics}, times in millis
+ */
+public interface DownloadMetricsMXBean {
+	long getDownloads();
+	long getFailures();
+	long getRetries();
+	long getBytes();
+	long getTimeToFirstByteP50Millis();
+	long getTimeToFirstByteP99Millis();
+	long getDurationP50Millis();
+	long getDurationP99Millis();
+	long getThroughputP50BytesPerSecond();
+	Map<String, Long> getFailureReasons();
+	Map<String, Long> getDurationP50MillisByHost();
+	Map<String, Long> getDurationP50MillisByProxy();
+}
@@ -20,15 +20,12 @@ import de.flapdoodle.checks.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.net.Proxy;
 import java.net.URI;
 import java.net.URL;
 import java.util.Map;
 import java.util.Optional;
-import java.util.StringJoiner;
-import java.util.regex.Pattern;
-
-import static java.util.regex.Pattern.quote;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class EnvProxySelector implements ProxySelector {
 	private static final Logger logger= LoggerFactory.getLogger(EnvProxySelector.class.getName());
@@ -67,13 +64,13 @@ public class EnvProxySelector implements ProxySelector {
 		return Optional.empty();
 	}
 
-	private static Optional<Pattern> noProxy(String noProxy) {
+	private static Optional<NoProxyMatcher> noProxy(String noProxy) {
 		return noProxy != null
-			? toPattern(noProxy)
+			? Optional.of(NoProxyMatcher.of(noProxy)).filter(it -> !it.isEmpty())
 			: Optional.empty();
 	}
 
-	private static ProxySelector proxy(String proxyUrl, Optional<Pattern> noProxyPattern) {
+	private static ProxySelector proxy(String proxyUrl, Optional<NoProxyMatcher> noProxyMatcher) {
 		if (proxyUrl != null) {
 			URI proxyUri = URI.create(proxyUrl);
 			String proxyHostName = proxyUri.getHost();
@@ -81,21 +78,25 @@ public class EnvProxySelector implements ProxySelector {
 
 			Preconditions.checkArgument(proxyUri.getUserInfo() == null,"UserInfo not supported: %s", proxyUri.getUserInfo());
 
-			return new HostnameBasesProxySelector(proxyHostName, proxyPort, noProxyPattern);
+			return new HostnameBasesProxySelector(proxyHostName, proxyPort, noProxyMatcher);
 		}
 		return ProxySelector.noProxy();
 	}
 
 	static class HostnameBasesProxySelector implements ProxySelector {
+		private static final int MAX_CACHED_HOSTS = 1024 * 4;
 
 		private final String proxyHostName;
 		private final int proxyPort;
-		private final Optional<Pattern> noProxyPattern;
+		private final Optional<NoProxyMatcher> noProxyMatcher;
+		private final Optional<ProxyFactory> proxyFactory;
+		private final ConcurrentMap<String, Boolean> useProxyByHost = new ConcurrentHashMap<>();
 
-		private HostnameBasesProxySelector(String proxyHostName, int proxyPort, Optional<Pattern> noProxyPattern) {
+		private HostnameBasesProxySelector(String proxyHostName, int proxyPort, Optional<NoProxyMatcher> noProxyMatcher) {
 			this.proxyHostName = proxyHostName;
 			this.proxyPort = proxyPort;
-			this.noProxyPattern = noProxyPattern;
+			this.noProxyMatcher = noProxyMatcher;
+			this.proxyFactory = Optional.of(ProxyFactory.of(proxyHostName, proxyPort));
 		}
 
 		@Override
@@ -103,7 +104,7 @@ public class EnvProxySelector implements ProxySelector {
 			return "HostnameBasesProxySelector{" +
 				"proxyHostName='" + proxyHostName + '\'' +
 				", proxyPort=" + proxyPort +
-				", noProxyPattern=" + noProxyPattern +
+				", noProxy=" + noProxyMatcher +
 				'}';
 		}
 		
@@ -111,84 +112,73 @@ public class EnvProxySelector implements ProxySelector {
 		public Optional<ProxyFactory> select(URL url) {
 			Preconditions.checkNotNull(url, "url is null");
 
-			if (useProxy(noProxyPattern, url)) {
-				return Optional.of(ProxyFactory.of(proxyHostName, proxyPort));
+			if (useProxy(url)) {
+				return proxyFactory;
 			}
 			return Optional.empty();
 		}
 
+		private boolean useProxy(URL url) {
+			if (!noProxyMatcher.isPresent()) {
+				return true;
+			}
+			String host = hostOf(url);
+			if (host == null) {
+				return true;
+			}
+			int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+			String key = host + ":" + port;
+			Boolean useProxy = useProxyByHost.get(key);
+			if (useProxy == null) {
+				useProxy = !noProxyMatcher.get().matches(host, port);
+				if (useProxyByHost.size() >= MAX_CACHED_HOSTS) {
+					useProxyByHost.clear();
+				}
+				useProxyByHost.put(key, useProxy);
+			}
+			return useProxy;
+		}
+
 		/**
 		 * Adaptation of sun.net.spi.DefaultProxySelector
 		 */
-		private boolean useProxy(Optional<Pattern> noProxyPattern, URL url) {
-			if (noProxyPattern.isPresent()) {
-				String host = url.getHost();
-				if (host == null) {
-					// This is a hack to ensure backward compatibility in two
-					// cases: 1. hostnames contain non-ascii characters,
-					// internationalized domain names. in which case, URI will
-					// return null, see BugID 4957669; 2. Some hostnames can
-					// contain '_' chars even though it's not supposed to be
-					// legal, in which case URI will return null for getHost,
-					// but not for getAuthority() See BugID 4913253
-					String auth = url.getAuthority();
-					if (auth != null) {
-						int i;
-						i = auth.indexOf('@');
-						if (i >= 0) {
-							auth = auth.substring(i+1);
-						}
-						i = auth.lastIndexOf(':');
-						if (i >= 0) {
-							auth = auth.substring(0,i);
-						}
-						host = auth;
+		private static String hostOf(URL url) {
+			String host = url.getHost();
+			if (host == null) {
+				// This is a hack to ensure backward compatibility in two
+				// cases: 1. hostnames contain non-ascii characters,
+				// internationalized domain names. in which case, URI will
+				// return null, see BugID 4957669; 2. Some hostnames can
+				// contain '_' chars even though it's not supposed to be
+				// legal, in which case URI will return null for getHost,
+				// but not for getAuthority() See BugID 4913253
+				String auth = url.getAuthority();
+				if (auth != null) {
+					int i;
+					i = auth.indexOf('@');
+					if (i >= 0) {
+						auth = auth.substring(i+1);
 					}
+					i = auth.lastIndexOf(':');
+					if (i >= 0) {
+						auth = auth.substring(0,i);
+					}
+					host = auth;
 				}
-				return host==null || !noProxyPattern.get().matcher(host.toLowerCase()).matches();
 			}
-			return true;
+			return host;
 		}
 	}
 
 	/**
-	 * Adaptation of sun.net.spi.DefaultProxySelector
-	 * 
-	 * @param mask non-null mask
-	 * @return {@link java.util.regex.Pattern} corresponding to this mask
-	 * or {@code null} in case mask should not match anything
+	 * the environment does not change, so the selector is created only once
 	 */
-	static Optional<Pattern> toPattern(String mask) {
-		boolean disjunctionEmpty = true;
-		StringJoiner joiner = new StringJoiner("|");
-		for (String disjunct : mask.split(",")) {
-			if (disjunct.isEmpty())
-				continue;
-			disjunctionEmpty = false;
-			String regex = disjunctToRegex(disjunct.toLowerCase());
-			joiner.add(regex);
-		}
-		return !disjunctionEmpty
-			? Optional.of(Pattern.compile(joiner.toString()))
-			: Optional.empty();
+	static ProxySelector fromEnvironment() {
+		return FromEnvironment.INSTANCE;
 	}
 
-	/**
-	 * @param disjunct non-null mask disjunct
-	 * @return java regex string corresponding to this mask
-	 */
-	static String disjunctToRegex(String disjunct) {
-		String regex;
-		if (disjunct.startsWith("*") && disjunct.endsWith("*")) {
-			regex = ".*" + quote(disjunct.substring(1, disjunct.length() - 1)) + ".*";
-		} else if (disjunct.startsWith("*")) {
-			regex = ".*" + quote(disjunct.substring(1));
-		} else if (disjunct.endsWith("*")) {
-			regex = quote(disjunct.substring(0, disjunct.length() - 1)) + ".*";
-		} else {
-			regex = quote(disjunct);
-		}
-		return regex;
+	private static class FromEnvironment {
+		private static final ProxySelector INSTANCE = with(System.getenv());
 	}
 
 	public static ProxySelector with(Map<String, String> env) {
@@ -197,11 +187,11 @@ public class EnvProxySelector implements ProxySelector {
 		String no_proxy = env.get(NO_PROXY_ENV_VARIABLE);
 
 		if (http_proxy != null || https_proxy != null) {
-			Optional<Pattern> noProxyPattern = noProxy(no_proxy);
+			Optional<NoProxyMatcher> noProxyMatcher = noProxy(no_proxy);
 
 			return new EnvProxySelector(
-				proxy(http_proxy, noProxyPattern),
-				proxy(https_proxy, noProxyPattern)
+				proxy(http_proxy, noProxyMatcher),
+				proxy(https_proxy, noProxyMatcher)
 			);
 		}
 
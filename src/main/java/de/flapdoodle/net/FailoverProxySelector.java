@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * tracks failures and latencies of each proxy and skips proxies, which failed too often (circuit breaker)
+ *
+ * after failureThreshold consecutive connect failures a proxy is skipped for openDuration, then it is tried again.
+ * Each failure of such a trial doubles the time it is skipped (up to maxOpenDuration), a success resets it.
+ * If all candidates are skipped, the first candidate is used. {@link HttpConnections#use(URL, de.flapdoodle.types.ThrowingFunction)}
+ * reports the outcome of each request and continues with the next candidate, if the connect failed.
+ */
+public class FailoverProxySelector implements ProxySelector {
+	private static final Logger logger = LoggerFactory.getLogger(FailoverProxySelector.class);
+
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	private final Function<URL, List<Optional<ProxyFactory>>> candidates;
+	private final int failureThreshold;
+	private final long openDurationNanos;
+	private final long maxOpenDurationNanos;
+	private final LongSupplier nanoTime;
+	private final ConcurrentMap<ProxyFactory, Health> healthByProxy = new ConcurrentHashMap<>();
+
+	FailoverProxySelector(
+		Function<URL, List<Optional<ProxyFactory>>> candidates,
+		int failureThreshold,
+		long openDurationNanos,
+		long maxOpenDurationNanos,
+		LongSupplier nanoTime
+	) {
+		Preconditions.checkArgument(failureThreshold > 0, "failureThreshold must be > 0: %s", failureThreshold);
+		Preconditions.checkArgument(openDurationNanos > 0, "openDuration must be > 0: %s", openDurationNanos);
+		Preconditions.checkArgument(maxOpenDurationNanos >= openDurationNanos, "maxOpenDuration must be >= openDuration: %s < %s", maxOpenDurationNanos, openDurationNanos);
+		this.candidates = candidates;
+		this.failureThreshold = failureThreshold;
+		this.openDurationNanos = openDurationNanos;
+		this.maxOpenDurationNanos = maxOpenDurationNanos;
+		this.nanoTime = nanoTime;
+	}
+
+	public FailoverProxySelector withFailureThreshold(int failureThreshold) {
+		return new FailoverProxySelector(candidates, failureThreshold, openDurationNanos, maxOpenDurationNanos, nanoTime);
+	}
+
+	public FailoverProxySelector withOpenDuration(Duration openDuration, Duration maxOpenDuration) {
+		return new FailoverProxySelector(candidates, failureThreshold, openDuration.toNanos(), maxOpenDuration.toNanos(), nanoTime);
+	}
+
+	@Override
+	public Optional<ProxyFactory> select(URL url) {
+		return candidates(url).get(0);
+	}
+
+	/**
+	 * @return available proxies first, an empty entry means direct connection
+	 */
+	public List<Optional<ProxyFactory>> candidates(URL url) {
+		List<Optional<ProxyFactory>> all = candidates.apply(url);
+		Preconditions.checkArgument(!all.isEmpty(), "no candidates for %s", url);
+		long now = nanoTime.getAsLong();
+		List<Optional<ProxyFactory>> available = new ArrayList<>(all.size());
+		List<Optional<ProxyFactory>> skipped = new ArrayList<>();
+		for (Optional<ProxyFactory> candidate : all) {
+			if (candidate.map(it -> isAvailable(it, now)).orElse(true)) {
+				available.add(candidate);
+			} else {
+				skipped.add(candidate);
+			}
+		}
+		available.addAll(skipped);
+		return available;
+	}
+
+	private boolean isAvailable(ProxyFactory proxy, long now) {
+		Health health = healthByProxy.get(proxy);
+		return health == null || health.isAvailable(now);
+	}
+
+	public void reportSuccess(ProxyFactory proxy, Duration latency) {
+		healthOf(proxy).success(latency.toNanos());
+	}
+
+	public void reportFailure(ProxyFactory proxy, IOException failure) {
+		healthOf(proxy).failure(nanoTime.getAsLong(), failure);
+	}
+
+	public Map<ProxyFactory, ProxyHealth> health() {
+		long now = nanoTime.getAsLong();
+		Map<ProxyFactory, ProxyHealth> ret = new LinkedHashMap<>();
+		healthByProxy.forEach((proxy, health) -> ret.put(proxy, health.snapshot(now)));
+		return Collections.unmodifiableMap(ret);
+	}
+
+	private Health healthOf(ProxyFactory proxy) {
+		return healthByProxy.computeIfAbsent(proxy, Health::new);
+	}
+
+	/**
+	 * connect failures are caused by the proxy (or the destination, if there is no proxy), other failures
+	 * are caused by the request
+	 */
+	static boolean isConnectFailure(IOException ex, boolean overProxy) {
+		if (ex instanceof ConnectException || ex instanceof NoRouteToHostException) {
+			return true;
+		}
+		if (ex instanceof SocketTimeoutException) {
+			String message = ex.getMessage();
+			return message != null && message.toLowerCase(Locale.ROOT).contains("connect");
+		}
+		// over a proxy only the proxy host is resolved
+		return overProxy && ex instanceof UnknownHostException;
+	}
+
+	@Override
+	public String toString() {
+		return "FailoverProxySelector{" +
+			"failureThreshold=" + failureThreshold +
+			", health=" + health() +
+			'}';
+	}
+
+	@Value.Immutable
+	public interface ProxyHealth {
+		long successes();
+
+		long failures();
+
+		int consecutiveFailures();
+
+		/**
+		 * exponentially weighted average of the request duration
+		 */
+		Optional<Duration> latency();
+
+		boolean available();
+	}
+
+	private class Health {
+		private final ProxyFactory proxy;
+
+		private long successes;
+		private long failures;
+		private int consecutiveFailures;
+		private long openUntil;
+		private long openDuration;
+		private boolean open;
+		private double latencyNanos = -1;
+
+		private Health(ProxyFactory proxy) {
+			this.proxy = proxy;
+		}
+
+		private synchronized boolean isAvailable(long now) {
+			return !open || now - openUntil >= 0;
+		}
+
+		private synchronized void success(long latency) {
+			successes++;
+			latencyNanos = latencyNanos < 0
+				? latency
+				: latencyNanos + LATENCY_WEIGHT * (latency - latencyNanos);
+			if (open) {
+				logger.info("proxy {} is available again", proxy);
+			}
+			consecutiveFailures = 0;
+			open = false;
+			openDuration = 0;
+		}
+
+		private synchronized void failure(long now, IOException failure) {
+			failures++;
+			consecutiveFailures++;
+			// requests started before the proxy was skipped should not extend the pause
+			if (consecutiveFailures >= failureThreshold && isAvailable(now)) {
+				openDuration = openDuration == 0
+					? openDurationNanos
+					: Math.min(openDuration * 2, maxOpenDurationNanos);
+				openUntil = now + openDuration;
+				open = true;
+				logger.warn("proxy {} failed {} times in a row, skip it for {}ms: {}", proxy, consecutiveFailures,
+					TimeUnit.NANOSECONDS.toMillis(openDuration), failure.toString());
+			}
+		}
+
+		private synchronized ProxyHealth snapshot(long now) {
+			return ImmutableProxyHealth.builder()
+				.successes(successes)
+				.failures(failures)
+				.consecutiveFailures(consecutiveFailures)
+				.latency(latencyNanos < 0 ? Optional.empty() : Optional.of(Duration.ofNanos((long) latencyNanos)))
+				.available(isAvailable(now))
+				.build();
+		}
+	}
+
+	/**
+	 * the proxy of the selector, direct connection as last resort
+	 */
+	public static FailoverProxySelector of(ProxySelector selector) {
+		return withCandidates(url -> {
+			Optional<ProxyFactory> proxy = selector.select(url);
+			return proxy.isPresent()
+				? Arrays.asList(proxy, Optional.empty())
+				: Collections.singletonList(Optional.empty());
+		});
+	}
+
+	public static FailoverProxySelector of(RuleChainProxySelector selector) {
+		return withCandidates(selector::candidates);
+	}
+
+	private static FailoverProxySelector withCandidates(Function<URL, List<Optional<ProxyFactory>>> candidates) {
+		return new FailoverProxySelector(candidates, 3, TimeUnit.SECONDS.toNanos(30), TimeUnit.MINUTES.toNanos(10), System::nanoTime);
+	}
+}
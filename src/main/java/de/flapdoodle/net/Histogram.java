@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * lock free histogram with one bucket for each power of two,
+ * percentiles are the upper bound of the matching bucket
+ */
+class Histogram {
+	private static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder sum = new LongAdder();
+	private final AtomicLong max = new AtomicLong();
+
+	void record(long value) {
+		long positive = Math.max(0, value);
+		buckets.incrementAndGet(bucketOf(positive));
+		count.increment();
+		sum.add(positive);
+		max.accumulateAndGet(positive, Math::max);
+	}
+
+	long count() {
+		return count.sum();
+	}
+
+	long sum() {
+		return sum.sum();
+	}
+
+	long max() {
+		return max.get();
+	}
+
+	long mean() {
+		long count = count();
+		return count > 0 ? sum() / count : 0;
+	}
+
+	/**
+	 * @param percentile 0..100
+	 */
+	long percentile(double percentile) {
+		long count = count();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen = seen + buckets.get(i);
+			if (seen >= Math.max(1, rank)) {
+				return Math.min(upperBoundOf(i), max());
+			}
+		}
+		return max();
+	}
+
+	static int bucketOf(long value) {
+		return Math.min(BUCKETS - 1, BUCKETS - Long.numberOfLeadingZeros(value));
+	}
+
+	static long upperBoundOf(int bucket) {
+		return bucket >= BUCKETS - 1
+			? Long.MAX_VALUE
+			: (1L << bucket) - 1;
+	}
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.types.ThrowingFunction;
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * reusable connection setup: proxy selection, timeouts and keep-alive
+ *
+ * connections opened with {@link #use(URL, ThrowingFunction)} are limited per host and the response is
+ * read to the end and closed afterwards, so that the jdk can put the underlying connection back into its
+ * keep-alive cache (see system properties http.keepAlive and http.maxConnections). There is no pool of its own.
+ * If the proxySelector is a {@link FailoverProxySelector}, a failed connect is retried with the next proxy.
+ * {@link URLConnections#urlConnectionOf(URL)} uses an instance configured by system properties.
+ */
+@Value.Immutable
+public abstract class HttpConnections {
+	private static final int DRAIN_BUFFER_SIZE = 1024 * 8;
+	private static final int MAX_DRAIN_SIZE = 1024 * 64;
+
+	@Value.Default
+	public ProxySelector proxySelector() {
+		return ProxySelector.noProxy();
+	}
+
+	/**
+	 * 0 for no timeout
+	 */
+	@Value.Default
+	public int connectTimeoutMillis() {
+		return 0;
+	}
+
+	/**
+	 * 0 for no timeout
+	 */
+	@Value.Default
+	public int readTimeoutMillis() {
+		return 0;
+	}
+
+	/**
+	 * if disabled, each connection is closed by the server after the response and not reused by the jdk
+	 */
+	@Value.Default
+	public boolean keepAlive() {
+		return true;
+	}
+
+	@Value.Default
+	public int maxConnectionsPerHost() {
+		return 5;
+	}
+
+	/**
+	 * the jdk can not send https requests over a proxy with basic auth, if enabled such requests use
+	 * a tunnel opened by this library instead of throwing an IllegalArgumentException.
+	 * {@link URLConnections#urlConnectionOf(URL)} enables it with the system property
+	 * {@link URLConnections#TUNNEL_HTTPS_OVER_PROXY_WITH_BASIC_AUTH}.
+	 */
+	@Value.Default
+	public boolean tunnelHttpsOverProxyWithBasicAuth() {
+		return false;
+	}
+
+	@Value.Default
+	public Backend backend() {
+		return Backend.urlConnection();
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(connectTimeoutMillis() >= 0, "connectTimeoutMillis must be >= 0: %s", connectTimeoutMillis());
+		Preconditions.checkArgument(readTimeoutMillis() >= 0, "readTimeoutMillis must be >= 0: %s", readTimeoutMillis());
+		Preconditions.checkArgument(maxConnectionsPerHost() > 0, "maxConnectionsPerHost must be > 0: %s", maxConnectionsPerHost());
+	}
+
+	@Value.Lazy
+	protected ConcurrentMap<String, Semaphore> permitsByHost() {
+		return new ConcurrentHashMap<>();
+	}
+
+	public Optional<Proxy> proxyOf(URL url) {
+		return proxySelector().select(url).map(ProxyFactory::create);
+	}
+
+	public URLConnection open(URL url) throws IOException {
+		return open(url, proxyOf(url));
+	}
+
+	public URLConnection open(URL url, Proxy proxy) throws IOException {
+		return open(url, Optional.of(proxy));
+	}
+
+	@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+	URLConnection open(URL url, Optional<Proxy> proxy) throws IOException {
+		URLConnection connection = proxy.isPresent() && proxy.get() instanceof Proxys.UseBasicAuth
+			? openWithBasicAuth(url, proxy.get())
+			: backend().open(url, proxy);
+
+		if (connectTimeoutMillis() > 0) {
+			connection.setConnectTimeout(connectTimeoutMillis());
+		}
+		if (readTimeoutMillis() > 0) {
+			connection.setReadTimeout(readTimeoutMillis());
+		}
+		if (!keepAlive()) {
+			connection.setRequestProperty("Connection", "close");
+		}
+		return connection;
+	}
+
+	private URLConnection openWithBasicAuth(URL url, Proxy proxy) throws IOException {
+		Proxys.UseBasicAuth withBasicAuth = (Proxys.UseBasicAuth) proxy;
+		if (url.getProtocol().equals("https")) {
+			if (tunnelHttpsOverProxyWithBasicAuth()) {
+				return new TunnelingHttpsURLConnection(url, proxy, withBasicAuth.proxyUser(), withBasicAuth.proxyPassword());
+			}
+			// the jdk creates a tunnel https connection proxy request with no way to add an header to this request
+			throw new IllegalArgumentException("access of a https url over a proxy with proxy authorization is not supported, "
+				+ "see HttpConnections.tunnelHttpsOverProxyWithBasicAuth or set '" + URLConnections.TUNNEL_HTTPS_OVER_PROXY_WITH_BASIC_AUTH + "=true'");
+		}
+		URLConnection connection = backend().open(url, Optional.of(proxy));
+		String authHeader = new String(Base64.getEncoder().encode((withBasicAuth.proxyUser() + ":" + withBasicAuth.proxyPassword()).getBytes()));
+		connection.setRequestProperty("Proxy-Authorization", "Basic " + authHeader);
+		return connection;
+	}
+
+	/**
+	 * waits for a free connection to the host, the response is drained and closed after the action is done
+	 */
+	public <T> T use(URL url, ThrowingFunction<URLConnection, T, IOException> action) throws IOException {
+		Semaphore permits = permitsByHost().computeIfAbsent(url.getHost() + ":" + url.getPort(), it -> new Semaphore(maxConnectionsPerHost()));
+		try {
+			permits.acquire();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a connection to " + url.getHost());
+		}
+		try {
+			return proxySelector() instanceof FailoverProxySelector
+				? useWithFailover(url, (FailoverProxySelector) proxySelector(), action)
+				: apply(open(url), action);
+		}
+		finally {
+			permits.release();
+		}
+	}
+
+	/**
+	 * a failed connect did not send anything, so the action can be applied again with the next candidate
+	 */
+	private <T> T useWithFailover(URL url, FailoverProxySelector selector, ThrowingFunction<URLConnection, T, IOException> action) throws IOException {
+		IOException lastFailure = null;
+		for (Optional<ProxyFactory> candidate : selector.candidates(url)) {
+			long start = System.nanoTime();
+			try {
+				// a direct candidate must not fall back to the default proxy selection of the jvm
+				T result = apply(open(url, Optional.of(candidate.map(ProxyFactory::create).orElse(Proxy.NO_PROXY))), action);
+				candidate.ifPresent(proxy -> selector.reportSuccess(proxy, Duration.ofNanos(System.nanoTime() - start)));
+				return result;
+			}
+			catch (IOException ex) {
+				if (!FailoverProxySelector.isConnectFailure(ex, candidate.isPresent())) {
+					throw ex;
+				}
+				candidate.ifPresent(proxy -> selector.reportFailure(proxy, ex));
+				if (lastFailure != null) {
+					ex.addSuppressed(lastFailure);
+				}
+				lastFailure = ex;
+			}
+		}
+		throw Preconditions.checkNotNull(lastFailure, "no candidates for %s", url);
+	}
+
+	/**
+	 * the action is expected to read the response, if it fails the connection may not be opened at all
+	 */
+	private <T> T apply(URLConnection connection, ThrowingFunction<URLConnection, T, IOException> action) throws IOException {
+		boolean responseRead = false;
+		try {
+			T result = action.apply(connection);
+			responseRead = true;
+			return result;
+		}
+		finally {
+			drainAndClose(connection, responseRead);
+		}
+	}
+
+	/**
+	 * a http connection is only reused, if the response was completely read, which is only tried after the action
+	 * did read the response and for small remainders, so that a failed connect or a large body does not send or
+	 * read more than necessary
+	 */
+	private void drainAndClose(URLConnection connection, boolean responseRead) {
+		if (!(connection instanceof HttpURLConnection)) {
+			return;
+		}
+		HttpURLConnection httpConnection = (HttpURLConnection) connection;
+		if (!keepAlive() || !responseRead || !drained(httpConnection)) {
+			httpConnection.disconnect();
+		}
+	}
+
+	private static boolean drained(HttpURLConnection connection) {
+		try (InputStream in = connection.getInputStream()) {
+			return drain(in);
+		}
+		catch (IOException ex) {
+			try (InputStream error = connection.getErrorStream()) {
+				return error == null || drain(error);
+			}
+			catch (IOException ignored) {
+				return false;
+			}
+		}
+	}
+
+	private static boolean drain(InputStream in) throws IOException {
+		byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+		long left = MAX_DRAIN_SIZE;
+		int read;
+		while ((read = in.read(buffer, 0, (int) Math.min(buffer.length, left + 1))) != -1) {
+			left = left - read;
+			if (left < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	public interface Backend {
+		/**
+		 * @param proxy if empty, the default proxy selection of the backend applies
+		 */
+		@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+		URLConnection open(URL url, Optional<Proxy> proxy) throws IOException;
+
+		static Backend urlConnection() {
+			return (url, proxy) -> proxy.isPresent()
+				? url.openConnection(proxy.get())
+				: url.openConnection();
+		}
+	}
+
+	public static ImmutableHttpConnections.Builder builder() {
+		return ImmutableHttpConnections.builder();
+	}
+
+	public static HttpConnections defaults() {
+		return builder().build();
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Optional;
+
+/**
+ * the server did answer with an error status
+ */
+public class HttpStatusException extends IOException {
+	private static final long serialVersionUID = 1L;
+
+	private final int statusCode;
+	// -1 if not set, Optional is not serializable
+	private final long retryAfterSeconds;
+
+	@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+	public HttpStatusException(URL url, int statusCode, Optional<Long> retryAfterSeconds) {
+		super("Server returned HTTP response code: " + statusCode + " for URL: " + url);
+		this.statusCode = statusCode;
+		this.retryAfterSeconds = retryAfterSeconds.orElse(-1L);
+	}
+
+	public int statusCode() {
+		return statusCode;
+	}
+
+	/**
+	 * value of the Retry-After header, if set in seconds
+	 */
+	public Optional<Long> retryAfterSeconds() {
+		return retryAfterSeconds >= 0 ? Optional.of(retryAfterSeconds) : Optional.empty();
+	}
+}
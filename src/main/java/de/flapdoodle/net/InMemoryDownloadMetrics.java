@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanRegistrationException;
+import javax.management.MalformedObjectNameException;
+import javax.management.NotCompliantMBeanException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * aggregates download measurements in histograms, overall and per host and proxy
+ */
+public class InMemoryDownloadMetrics implements DownloadMetrics, DownloadMetricsMXBean {
+	private static final String DIRECT = "DIRECT";
+
+	private final Statistics all = new Statistics();
+	private final ConcurrentMap<String, Statistics> byHost = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, Statistics> byProxy = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, LongAdder> failures = new ConcurrentHashMap<>();
+
+	InMemoryDownloadMetrics() {
+	}
+
+	@Override
+	public void record(DownloadMetric metric) {
+		all.record(metric);
+		byHost.computeIfAbsent(metric.url().getHost(), it -> new Statistics()).record(metric);
+		byProxy.computeIfAbsent(metric.proxy().orElse(DIRECT), it -> new Statistics()).record(metric);
+		metric.failure().ifPresent(failure -> failures.computeIfAbsent(reasonOf(failure), it -> new LongAdder()).increment());
+	}
+
+	/**
+	 * messages often contain the url, so only the exception class is kept to limit the number of reasons
+	 */
+	private static String reasonOf(String failure) {
+		int separator = failure.indexOf(':');
+		return separator != -1
+			? failure.substring(0, separator)
+			: failure;
+	}
+
+	@Override
+	public long getDownloads() {
+		return all.bytes.count();
+	}
+
+	@Override
+	public long getFailures() {
+		return all.failed.sum();
+	}
+
+	@Override
+	public long getRetries() {
+		return all.retries.sum();
+	}
+
+	@Override
+	public long getBytes() {
+		return all.totalBytes.sum();
+	}
+
+	@Override
+	public long getTimeToFirstByteP50Millis() {
+		return millis(all.timeToFirstByte.percentile(50));
+	}
+
+	@Override
+	public long getTimeToFirstByteP99Millis() {
+		return millis(all.timeToFirstByte.percentile(99));
+	}
+
+	@Override
+	public long getDurationP50Millis() {
+		return millis(all.duration.percentile(50));
+	}
+
+	@Override
+	public long getDurationP99Millis() {
+		return millis(all.duration.percentile(99));
+	}
+
+	@Override
+	public long getThroughputP50BytesPerSecond() {
+		return all.throughput.percentile(50);
+	}
+
+	@Override
+	public Map<String, Long> getFailureReasons() {
+		return counts(failures, LongAdder::sum);
+	}
+
+	@Override
+	public Map<String, Long> getDurationP50MillisByHost() {
+		return counts(byHost, it -> millis(it.duration.percentile(50)));
+	}
+
+	@Override
+	public Map<String, Long> getDurationP50MillisByProxy() {
+		return counts(byProxy, it -> millis(it.duration.percentile(50)));
+	}
+
+	/**
+	 * register as mbean with the platform mbean server
+	 */
+	public ObjectName registerMBean(String name) throws MalformedObjectNameException, NotCompliantMBeanException,
+		InstanceAlreadyExistsException, MBeanRegistrationException {
+		ObjectName objectName = new ObjectName("de.flapdoodle.net:type=DownloadMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * plain text report of all measurements
+	 */
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("downloads: ").append(getDownloads())
+			.append(" (failed: ").append(getFailures())
+			.append(", retries: ").append(getRetries())
+			.append(", bytes: ").append(getBytes())
+			.append(")\n");
+		all.dump(sb, "  ");
+
+		sb.append("by host:\n");
+		new TreeMap<>(byHost).forEach((host, statistics) -> {
+			sb.append("  ").append(host).append(": ").append(statistics.bytes.count()).append(" downloads, ")
+				.append(statistics.failed.sum()).append(" failed\n");
+			statistics.dump(sb, "    ");
+		});
+
+		sb.append("by proxy:\n");
+		new TreeMap<>(byProxy).forEach((proxy, statistics) -> {
+			sb.append("  ").append(proxy).append(": ").append(statistics.bytes.count()).append(" downloads, ")
+				.append(statistics.failed.sum()).append(" failed\n");
+			statistics.dump(sb, "    ");
+		});
+
+		if (!failures.isEmpty()) {
+			sb.append("failures:\n");
+			getFailureReasons().forEach((reason, count) -> sb.append("  ").append(count).append("x ").append(reason).append("\n"));
+		}
+		return sb.toString();
+	}
+
+	private static long millis(long nanos) {
+		return TimeUnit.NANOSECONDS.toMillis(nanos);
+	}
+
+	private static <T> Map<String, Long> counts(Map<String, T> source, Function<T, Long> value) {
+		Map<String, Long> ret = new TreeMap<>();
+		source.forEach((key, it) -> ret.put(key, value.apply(it)));
+		return ret;
+	}
+
+	private static class Statistics {
+		private final Histogram bytes = new Histogram();
+		private final Histogram timeToFirstByte = new Histogram();
+		private final Histogram duration = new Histogram();
+		private final Histogram throughput = new Histogram();
+		private final LongAdder totalBytes = new LongAdder();
+		private final LongAdder failed = new LongAdder();
+		private final LongAdder retries = new LongAdder();
+
+		void record(DownloadMetric metric) {
+			bytes.record(metric.bytes());
+			if (metric.timeToFirstByte() >= 0) {
+				timeToFirstByte.record(metric.timeToFirstByte());
+			}
+			duration.record(metric.duration());
+			totalBytes.add(metric.bytes());
+			retries.add(metric.retries());
+			if (metric.failed()) {
+				failed.increment();
+			} else {
+				throughput.record(metric.bytesPerSecond());
+			}
+		}
+
+		void dump(StringBuilder sb, String indent) {
+			sb.append(indent).append("time to first byte (ms): ").append(percentiles(timeToFirstByte, true)).append("\n");
+			sb.append(indent).append("duration (ms): ").append(percentiles(duration, true)).append("\n");
+			sb.append(indent).append("size (bytes): ").append(percentiles(bytes, false)).append("\n");
+			sb.append(indent).append("throughput (bytes/s): ").append(percentiles(throughput, false)).append("\n");
+		}
+
+		private static String percentiles(Histogram histogram, boolean nanosToMillis) {
+			Function<Long, Long> unit = nanosToMillis
+				? InMemoryDownloadMetrics::millis
+				: Function.identity();
+			return "p50=" + unit.apply(histogram.percentile(50))
+				+ " p90=" + unit.apply(histogram.percentile(90))
+				+ " p99=" + unit.apply(histogram.percentile(99))
+				+ " max=" + unit.apply(histogram.max());
+		}
+	}
+}
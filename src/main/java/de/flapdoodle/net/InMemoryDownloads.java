@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * download into a buffer, which is allocated with the content length (if known), so that
+ * nothing must be copied. Content bigger than a threshold is written into a temp file which is mapped into memory.
+ */
+class InMemoryDownloads {
+	private static final Logger logger = LoggerFactory.getLogger(InMemoryDownloads.class);
+
+	static final long MEMORY_MAP_THRESHOLD = 1024 * 1024 * 64;
+	static final long NO_MEMORY_MAP = Long.MAX_VALUE;
+
+	private static final int INITIAL_CAPACITY = 1024 * 8 * 8;
+	private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+	private InMemoryDownloads() {
+		// no instance
+	}
+
+	/**
+	 * @return buffer, flipped, positioned at 0
+	 */
+	static ByteBuffer download(URLConnection connection, URLConnections.DownloadCopyListener copyListener, Allocator allocator, long memoryMapThreshold) throws IOException {
+		URL url = connection.getURL();
+		long length = connection.getContentLengthLong();
+		if (length > memoryMapThreshold) {
+			return mapped(URLConnections.downloadIntoTempFile(connection, copyListener));
+		}
+		Preconditions.checkArgument(length <= MAX_CAPACITY, "content length too big for a buffer: %s", length);
+
+		copyListener.downloaded(url, 0, length);
+		try (ReadableByteChannel source = Channels.newChannel(connection.getInputStream())) {
+			ByteBuffer buffer = allocator.allocate(length != -1 ? (int) length : INITIAL_CAPACITY);
+			boolean done = false;
+			try {
+				while (true) {
+					if (!buffer.hasRemaining()) {
+						if (length != -1) {
+							checkNoMoreContent(source, length);
+							break;
+						}
+						if (buffer.position() * 2L > memoryMapThreshold) {
+							ByteBuffer mapped = spillIntoTempFile(buffer, source, url, copyListener);
+							allocator.release(buffer);
+							done = true;
+							return mapped;
+						}
+						buffer = grow(buffer, allocator);
+					}
+					int read = source.read(buffer);
+					if (read == -1) {
+						break;
+					}
+					if (read > 0) {
+						copyListener.downloaded(url, buffer.position(), length);
+					}
+				}
+				Preconditions.checkArgument(length == -1 || length == buffer.position(), "hmm.. readCount smaller than contentLength(partial download?): %s > %s", buffer.position(), length);
+				buffer.flip();
+				done = true;
+				return buffer;
+			}
+			finally {
+				if (!done) {
+					allocator.release(buffer);
+				}
+			}
+		}
+	}
+
+	private static void checkNoMoreContent(ReadableByteChannel source, long length) throws IOException {
+		int read = source.read(ByteBuffer.allocate(1));
+		Preconditions.checkArgument(read <= 0, "hmm.. readCount bigger than contentLength(more than we want to): %s > %s", length + read, length);
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer, Allocator allocator) {
+		Preconditions.checkArgument(buffer.position() < MAX_CAPACITY, "content too big for a buffer: %s", buffer.position());
+		ByteBuffer grown = allocator.allocate((int) Math.min(MAX_CAPACITY, Math.max(INITIAL_CAPACITY, buffer.position() * 2L)));
+		buffer.flip();
+		grown.put(buffer);
+		allocator.release(buffer);
+		return grown;
+	}
+
+	private static ByteBuffer spillIntoTempFile(ByteBuffer buffer, ReadableByteChannel source, URL url, URLConnections.DownloadCopyListener copyListener) throws IOException {
+		Path tempFile = Files.createTempFile("download", "");
+		try {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				long offset = channel.position();
+				Transfers.transferFrom(source, channel, offset, (block, total) -> copyListener.downloaded(url, offset + total, -1));
+			}
+			return mapped(tempFile);
+		}
+		catch (IOException | RuntimeException ex) {
+			Files.deleteIfExists(tempFile);
+			throw ex;
+		}
+	}
+
+	/**
+	 * the mapping stays valid after the file is deleted (if the os does allow to delete it)
+	 */
+	private static ByteBuffer mapped(Path tempFile) throws IOException {
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		finally {
+			try {
+				Files.delete(tempFile);
+			}
+			catch (IOException ex) {
+				logger.debug("could not delete mapped file {}, delete on exit", tempFile, ex);
+				tempFile.toFile().deleteOnExit();
+			}
+		}
+	}
+
+	interface Allocator {
+		ByteBuffer allocate(int capacity);
+
+		void release(ByteBuffer buffer);
+
+		static Allocator heap() {
+			return new Allocator() {
+				@Override
+				public ByteBuffer allocate(int capacity) {
+					return ByteBuffer.allocate(capacity);
+				}
+
+				@Override
+				public void release(ByteBuffer buffer) {
+					// garbage collected
+				}
+			};
+		}
+
+		static Allocator pooled(ByteBufferPool pool) {
+			return new Allocator() {
+				@Override
+				public ByteBuffer allocate(int capacity) {
+					return pool.acquire(capacity);
+				}
+
+				@Override
+				public void release(ByteBuffer buffer) {
+					pool.release(buffer);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.immutables.value.Value;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+
+/**
+ * loopback address and the ip stacks, which can be used on it
+ */
+@Value.Immutable
+public abstract class Loopback {
+	private static final int IPV4_LENGTH = 4;
+
+	private static final byte[] IPV4_LOOPBACK = {127, 0, 0, 1};
+	private static final byte[] IPV6_LOOPBACK = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+
+	public abstract InetAddress address();
+
+	/**
+	 * a server socket could be bound to 127.0.0.1
+	 */
+	public abstract boolean supportsIPv4();
+
+	/**
+	 * a server socket could be bound to ::1
+	 */
+	public abstract boolean supportsIPv6();
+
+	public boolean isIPv6() {
+		return address().getAddress().length > IPV4_LENGTH;
+	}
+
+	public boolean isDualStack() {
+		return supportsIPv4() && supportsIPv6();
+	}
+
+	static Loopback detect() throws UnknownHostException {
+		return ImmutableLoopback.builder()
+			.address(InetAddress.getByName(""))
+			.supportsIPv4(canBind(IPV4_LOOPBACK))
+			.supportsIPv6(canBind(IPV6_LOOPBACK))
+			.build();
+	}
+
+	private static boolean canBind(byte[] address) {
+		try {
+			new ServerSocket(0, 0, InetAddress.getByAddress(address)).close();
+			return true;
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+}
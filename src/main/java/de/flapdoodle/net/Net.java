@@ -16,6 +16,7 @@
  */
 package de.flapdoodle.net;
 
+import de.flapdoodle.types.Either;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,12 +26,13 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509ExtendedTrustManager;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Net {
 	private static final Logger logger= LoggerFactory.getLogger(Net.class);
@@ -38,34 +40,86 @@ public class Net {
 	private static final String NO_LOCALHOST_ERROR_MESSAGE = "We could not detect if localhost is IPv4 or IPv6. " +
 		"Sometimes there is no entry for localhost. " +
 		"If 'ping localhost' does not work, it could help to add the right entry in your hosts configuration file.";
-	private static final int IPV4_LENGTH = 4;
+
+	private static final AtomicReference<Either<Loopback, UnknownHostException>> LOOPBACK = new AtomicReference<>();
 
 	public static boolean localhostIsIPv6() throws UnknownHostException {
-		try {
-			InetAddress addr = getLocalHost();
-			byte[] ipAddr = addr.getAddress();
-			return ipAddr.length > IPV4_LENGTH;
-		} catch (UnknownHostException ux) {
-			logger.error(NO_LOCALHOST_ERROR_MESSAGE, ux);
-			throw ux;
+		return loopback().isIPv6();
+	}
+
+	/**
+	 * detected once, see {@link #refreshLoopback()}
+	 */
+	public static Loopback loopback() throws UnknownHostException {
+		Either<Loopback, UnknownHostException> loopback = LOOPBACK.get();
+		return unwrap(loopback != null ? loopback : detectLoopback());
+	}
+
+	/**
+	 * detect again, if the network configuration has changed
+	 */
+	public static Loopback refreshLoopback() throws UnknownHostException {
+		synchronized (LOOPBACK) {
+			LOOPBACK.set(null);
+		}
+		return loopback();
+	}
+
+	private static Either<Loopback, UnknownHostException> detectLoopback() {
+		synchronized (LOOPBACK) {
+			Either<Loopback, UnknownHostException> loopback = LOOPBACK.get();
+			if (loopback == null) {
+				try {
+					loopback = Either.left(Loopback.detect());
+					logger.debug("detected {}", loopback.left());
+				} catch (UnknownHostException ux) {
+					logger.error(NO_LOCALHOST_ERROR_MESSAGE, ux);
+					loopback = Either.right(ux);
+				}
+				LOOPBACK.set(loopback);
+			}
+			return loopback;
+		}
+	}
+
+	private static Loopback unwrap(Either<Loopback, UnknownHostException> loopback) throws UnknownHostException {
+		if (loopback.isLeft()) {
+			return loopback.left();
 		}
+		UnknownHostException ux = new UnknownHostException(loopback.right().getMessage());
+		ux.initCause(loopback.right());
+		throw ux;
 	}
 
 	public static int freeServerPort() throws IOException {
 		return freeServerPort(getLocalHost());
 	}
 
+	/**
+	 * a port is not handed out twice by this process, as long as there are less than 1024 newer ports
+	 * @see PortAllocator#ephemeral()
+	 */
 	public static int freeServerPort(InetAddress hostAddress) throws IOException {
-		try(ServerSocket socket = new ServerSocket(0,0,hostAddress)) {
-			return socket.getLocalPort();
-		}
+		return DefaultPortAllocator.INSTANCE.allocate(hostAddress);
+	}
+
+	public static List<Integer> freeServerPorts(int count) throws IOException {
+		return freeServerPorts(getLocalHost(), count);
+	}
+
+	public static List<Integer> freeServerPorts(InetAddress hostAddress, int count) throws IOException {
+		return DefaultPortAllocator.INSTANCE.allocate(hostAddress, count);
+	}
+
+	private static class DefaultPortAllocator {
+		private static final PortAllocator INSTANCE = PortAllocator.ephemeral();
 	}
 
 	/**
 	 * get loopback address
 	 */
 	public static InetAddress getLocalHost() throws UnknownHostException {
-		return InetAddress.getByName("");
+		return loopback().address();
 	}
 
 	@Deprecated
@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.*;
+
+/**
+ * matches a host against a no_proxy list without regular expressions
+ *
+ * entries (compared case insensitive) can be
+ * <ul>
+ *   <li>exact host names or ip addresses (localhost, ::1)</li>
+ *   <li>domains with a leading dot, which match the domain and all its sub domains (.example.com)</li>
+ *   <li>'*suffix', 'prefix*', '*part*' and '*' to match every host</li>
+ *   <li>ipv4 and ipv6 ranges in cidr notation (10.0.0.0/8, fd00::/8)</li>
+ * </ul>
+ * and each entry can be limited to a port (host:8080, [::1]:8080).
+ */
+class NoProxyMatcher {
+	private static final int ANY_PORT = -1;
+
+	private final String mask;
+	private final Rules anyPort = new Rules();
+	private final Map<Integer, Rules> byPort = new HashMap<>();
+
+	private NoProxyMatcher(String mask) {
+		this.mask = mask;
+		for (String entry : mask.split(",")) {
+			add(entry.trim().toLowerCase(Locale.ROOT));
+		}
+	}
+
+	private void add(String entry) {
+		if (entry.isEmpty()) {
+			return;
+		}
+		int port = ANY_PORT;
+		String hostPart = entry;
+
+		int portSeparator = entry.lastIndexOf(':');
+		if (portSeparator != -1 && isPort(entry.substring(portSeparator + 1))
+			&& (entry.startsWith("[") ? entry.charAt(portSeparator - 1) == ']' : entry.indexOf(':') == portSeparator)) {
+			port = Integer.parseInt(entry.substring(portSeparator + 1));
+			hostPart = entry.substring(0, portSeparator);
+		}
+
+		Rules rules = port == ANY_PORT
+			? anyPort
+			: byPort.computeIfAbsent(port, it -> new Rules());
+		rules.add(withoutBrackets(hostPart));
+	}
+
+	boolean isEmpty() {
+		return anyPort.isEmpty() && byPort.isEmpty();
+	}
+
+	boolean matches(String host) {
+		return matches(host, ANY_PORT);
+	}
+
+	/**
+	 * @param port -1 if unknown, then only rules without port are used
+	 */
+	boolean matches(String host, int port) {
+		String lowerCase = withoutBrackets(host.toLowerCase(Locale.ROOT));
+		if (anyPort.matches(lowerCase)) {
+			return true;
+		}
+		Rules rules = port != ANY_PORT
+			? byPort.get(port)
+			: null;
+		return rules != null && rules.matches(lowerCase);
+	}
+
+	static NoProxyMatcher of(String mask) {
+		return new NoProxyMatcher(mask);
+	}
+
+	@Override
+	public String toString() {
+		return "NoProxyMatcher{" + mask + "}";
+	}
+
+	private static boolean isPort(String value) {
+		if (value.isEmpty() || value.length() > 5) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (!Character.isDigit(value.charAt(i))) {
+				return false;
+			}
+		}
+		return Integer.parseInt(value) <= 0xffff;
+	}
+
+	private static String withoutBrackets(String host) {
+		return host.startsWith("[") && host.endsWith("]")
+			? host.substring(1, host.length() - 1)
+			: host;
+	}
+
+	/**
+	 * @return address, -1 if not an ipv4 literal
+	 */
+	static long ipv4(String host) {
+		long address = 0;
+		int octets = 0;
+		int octet = -1;
+		for (int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			if (c >= '0' && c <= '9') {
+				octet = (octet == -1 ? 0 : octet * 10) + (c - '0');
+				if (octet > 255) {
+					return -1;
+				}
+			} else if (c == '.' && octet != -1 && octets < 3) {
+				address = (address << 8) | octet;
+				octets++;
+				octet = -1;
+			} else {
+				return -1;
+			}
+		}
+		return octets == 3 && octet != -1
+			? (address << 8) | octet
+			: -1;
+	}
+
+	/**
+	 * parses ip literals only, never does a name lookup
+	 *
+	 * @return 4 bytes for ipv4, 16 bytes for ipv6, empty if not an ip literal
+	 */
+	static Optional<byte[]> ipAddress(String host) {
+		long ipv4 = ipv4(host);
+		if (ipv4 != -1) {
+			return Optional.of(new byte[] { (byte) (ipv4 >> 24), (byte) (ipv4 >> 16), (byte) (ipv4 >> 8), (byte) ipv4 });
+		}
+		if (host.indexOf(':') == -1) {
+			return Optional.empty();
+		}
+		for (int i = 0; i < host.length(); i++) {
+			char c = host.charAt(i);
+			boolean valid = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F') || c == ':' || c == '.';
+			if (!valid) {
+				return Optional.empty();
+			}
+		}
+		try {
+			byte[] address = InetAddress.getByName(host).getAddress();
+			return address.length == 16
+				? Optional.of(address)
+				: Optional.empty();
+		}
+		catch (UnknownHostException ex) {
+			return Optional.empty();
+		}
+	}
+
+	private static class Rules {
+		private final Set<String> hosts = new HashSet<>();
+		private final CharTrie suffixes = new CharTrie();
+		private final CharTrie prefixes = new CharTrie();
+		private final List<String> parts = new ArrayList<>();
+		private final List<IpRange> ipRanges = new ArrayList<>();
+		private boolean matchAll = false;
+
+		void add(String entry) {
+			if (entry.equals("*")) {
+				matchAll = true;
+				return;
+			}
+			boolean leadingWildcard = entry.startsWith("*");
+			boolean trailingWildcard = entry.length() > 1 && entry.endsWith("*");
+			if (leadingWildcard && trailingWildcard) {
+				parts.add(entry.substring(1, entry.length() - 1));
+			} else if (leadingWildcard) {
+				suffixes.add(entry.substring(1), true);
+			} else if (trailingWildcard) {
+				prefixes.add(entry.substring(0, entry.length() - 1), false);
+			} else if (entry.startsWith(".")) {
+				suffixes.add(entry, true);
+				hosts.add(entry.substring(1));
+			} else {
+				Optional<IpRange> range = IpRange.of(entry);
+				if (range.isPresent()) {
+					ipRanges.add(range.get());
+				} else {
+					hosts.add(entry);
+				}
+			}
+		}
+
+		boolean isEmpty() {
+			return !matchAll && hosts.isEmpty() && suffixes.isEmpty() && prefixes.isEmpty() && parts.isEmpty() && ipRanges.isEmpty();
+		}
+
+		boolean matches(String host) {
+			if (matchAll || hosts.contains(host) || suffixes.matches(host, true) || prefixes.matches(host, false)) {
+				return true;
+			}
+			for (String part : parts) {
+				if (host.contains(part)) {
+					return true;
+				}
+			}
+			if (!ipRanges.isEmpty()) {
+				Optional<byte[]> address = ipAddress(host);
+				if (address.isPresent()) {
+					for (IpRange range : ipRanges) {
+						if (range.contains(address.get())) {
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	private static class IpRange {
+		private final byte[] network;
+		private final int prefixLength;
+
+		private IpRange(byte[] network, int prefixLength) {
+			this.network = network;
+			this.prefixLength = prefixLength;
+		}
+
+		boolean contains(byte[] address) {
+			if (address.length != network.length) {
+				return false;
+			}
+			int fullBytes = prefixLength / 8;
+			for (int i = 0; i < fullBytes; i++) {
+				if (address[i] != network[i]) {
+					return false;
+				}
+			}
+			int remainingBits = prefixLength % 8;
+			if (remainingBits == 0) {
+				return true;
+			}
+			int mask = 0xff << (8 - remainingBits);
+			return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+		}
+
+		/**
+		 * ip address with optional prefix length, a single address if the prefix length is missing
+		 */
+		static Optional<IpRange> of(String entry) {
+			int slash = entry.indexOf('/');
+			String address = slash != -1 ? entry.substring(0, slash) : entry;
+			Optional<byte[]> network = ipAddress(address);
+			if (!network.isPresent()) {
+				return Optional.empty();
+			}
+			int maxPrefixLength = network.get().length * 8;
+			int prefixLength = maxPrefixLength;
+			if (slash != -1) {
+				try {
+					prefixLength = Integer.parseInt(entry.substring(slash + 1));
+				}
+				catch (NumberFormatException ex) {
+					return Optional.empty();
+				}
+			}
+			return prefixLength >= 0 && prefixLength <= maxPrefixLength
+				? Optional.of(new IpRange(network.get(), prefixLength))
+				: Optional.empty();
+		}
+	}
+
+	/**
+	 * matches if the host starts (or ends, if reversed) with one of the added strings
+	 */
+	private static class CharTrie {
+		private final Node root = new Node();
+		private boolean empty = true;
+
+		void add(String value, boolean reversed) {
+			Node node = root;
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(reversed ? value.length() - 1 - i : i);
+				node = node.children.computeIfAbsent(c, it -> new Node());
+			}
+			node.terminal = true;
+			empty = false;
+		}
+
+		boolean isEmpty() {
+			return empty;
+		}
+
+		boolean matches(String host, boolean reversed) {
+			if (empty) {
+				return false;
+			}
+			Node node = root;
+			for (int i = 0; i < host.length(); i++) {
+				if (node.terminal) {
+					return true;
+				}
+				node = node.children.get(host.charAt(reversed ? host.length() - 1 - i : i));
+				if (node == null) {
+					return false;
+				}
+			}
+			return node.terminal;
+		}
+
+		private static class Node {
+			private final Map<Character, Node> children = new HashMap<>();
+			private boolean terminal;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * hands out server ports, which are not handed out again until they are released (or until enough newer
+ * ports were handed out)
+ *
+ * ports are taken from a range or assigned by the operating system (ephemeral). With a lock directory a port
+ * is also reserved for other processes using the same directory, by holding a lock on a file named after the port.
+ */
+public class PortAllocator {
+	private static final Logger logger = LoggerFactory.getLogger(PortAllocator.class);
+
+	static final int EPHEMERAL = 0;
+	private static final int MAX_RESERVED_EPHEMERAL = 1024;
+
+	private final int from;
+	private final int to;
+	private final int maxReserved;
+	private final Optional<Path> lockDirectory;
+
+	private final AtomicInteger cursor;
+	private final ConcurrentMap<Integer, Reservation> reserved = new ConcurrentHashMap<>();
+	private final Queue<Integer> reservedInOrder = new ConcurrentLinkedQueue<>();
+
+	@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+	PortAllocator(int from, int to, int maxReserved, Optional<Path> lockDirectory) {
+		Preconditions.checkArgument(from == EPHEMERAL ? to == EPHEMERAL : from > 0 && from <= to && to <= 65535, "invalid port range: %s-%s", from, to);
+		Preconditions.checkArgument(maxReserved > 0, "maxReserved must be > 0: %s", maxReserved);
+		this.from = from;
+		this.to = to;
+		this.maxReserved = maxReserved;
+		this.lockDirectory = lockDirectory;
+		// processes sharing a range should not probe the same ports first
+		this.cursor = new AtomicInteger(from == EPHEMERAL ? 0 : ThreadLocalRandom.current().nextInt(rangeSize()));
+	}
+
+	public PortAllocator withLockDirectory(Path lockDirectory) throws IOException {
+		Files.createDirectories(lockDirectory);
+		return new PortAllocator(from, to, maxReserved, Optional.of(lockDirectory));
+	}
+
+	public int allocate(InetAddress hostAddress) throws IOException {
+		return from == EPHEMERAL
+			? allocateEphemeral(hostAddress, 1).get(0)
+			: allocateFromRange(hostAddress, Collections.emptySet());
+	}
+
+	/**
+	 * @return count different ports
+	 */
+	public List<Integer> allocate(InetAddress hostAddress, int count) throws IOException {
+		Preconditions.checkArgument(count > 0 && count < maxReserved, "count must be > 0 and < %s: %s", maxReserved, count);
+		if (from == EPHEMERAL) {
+			return allocateEphemeral(hostAddress, count);
+		}
+		List<Integer> ports = new ArrayList<>(count);
+		Set<Integer> batch = new HashSet<>();
+		try {
+			for (int i = 0; i < count; i++) {
+				int port = allocateFromRange(hostAddress, batch);
+				batch.add(port);
+				ports.add(port);
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			ports.forEach(this::release);
+			throw ex;
+		}
+		return ports;
+	}
+
+	public void release(int port) {
+		reservedInOrder.remove(port);
+		Reservation reservation = reserved.remove(port);
+		if (reservation != null) {
+			reservation.release();
+		}
+	}
+
+	private int rangeSize() {
+		return to - from + 1;
+	}
+
+	private int allocateFromRange(InetAddress hostAddress, Set<Integer> batch) throws IOException {
+		int size = rangeSize();
+		for (int i = 0; i < size; i++) {
+			int port = from + Math.floorMod(cursor.getAndIncrement(), size);
+			if (reserve(port)) {
+				if (isBindable(hostAddress, port)) {
+					return handedOut(port, batch);
+				}
+				release(port);
+			}
+		}
+		throw new IOException("no free port in range " + from + "-" + to + " on " + hostAddress);
+	}
+
+	/**
+	 * all sockets are open at the same time, so the operating system assigns different ports
+	 */
+	private List<Integer> allocateEphemeral(InetAddress hostAddress, int count) throws IOException {
+		List<ServerSocket> sockets = new ArrayList<>();
+		List<Integer> ports = new ArrayList<>(count);
+		try {
+			int attempts = 0;
+			while (ports.size() < count) {
+				if (attempts++ >= count + maxReserved) {
+					throw new IOException("could not allocate " + count + " ports on " + hostAddress);
+				}
+				ServerSocket socket = new ServerSocket(EPHEMERAL, 0, hostAddress);
+				sockets.add(socket);
+				int port = socket.getLocalPort();
+				if (reserve(port)) {
+					ports.add(port);
+				}
+			}
+		}
+		catch (IOException | RuntimeException ex) {
+			ports.forEach(this::release);
+			throw ex;
+		}
+		finally {
+			for (ServerSocket socket : sockets) {
+				socket.close();
+			}
+		}
+		Set<Integer> batch = new HashSet<>(ports);
+		for (Integer port : ports) {
+			handedOut(port, batch);
+		}
+		return ports;
+	}
+
+	private boolean reserve(int port) throws IOException {
+		Reservation reservation = new Reservation();
+		if (reserved.putIfAbsent(port, reservation) != null) {
+			return false;
+		}
+		if (lockDirectory.isPresent() && !reservation.lock(lockDirectory.get().resolve("port-" + port + ".lock"))) {
+			reserved.remove(port, reservation);
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * keeps at least one port of a range available, ports of the same batch are not released
+	 */
+	private int handedOut(int port, Set<Integer> batch) {
+		reservedInOrder.add(port);
+		while (reserved.size() >= maxReserved) {
+			Optional<Integer> oldest = reservedInOrder.stream()
+				.filter(it -> it != port && !batch.contains(it))
+				.findFirst();
+			if (!oldest.isPresent()) {
+				break;
+			}
+			release(oldest.get());
+		}
+		return port;
+	}
+
+	private static boolean isBindable(InetAddress hostAddress, int port) {
+		try {
+			new ServerSocket(port, 0, hostAddress).close();
+			return true;
+		}
+		catch (IOException ex) {
+			return false;
+		}
+	}
+
+	private static class Reservation {
+		private FileChannel lockFile;
+
+		private synchronized boolean lock(Path file) throws IOException {
+			FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			try {
+				FileLock lock = channel.tryLock();
+				if (lock != null) {
+					lockFile = channel;
+					return true;
+				}
+			}
+			catch (OverlappingFileLockException ex) {
+				// locked by another allocator of this process
+			}
+			channel.close();
+			return false;
+		}
+
+		/**
+		 * lock files are not deleted, another process could hold a lock on a deleted file
+		 */
+		private synchronized void release() {
+			if (lockFile != null) {
+				try {
+					lockFile.close();
+				}
+				catch (IOException ex) {
+					logger.warn("could not release port lock", ex);
+				}
+				lockFile = null;
+			}
+		}
+	}
+
+	/**
+	 * ports assigned by the operating system
+	 */
+	public static PortAllocator ephemeral() {
+		return new PortAllocator(EPHEMERAL, EPHEMERAL, MAX_RESERVED_EPHEMERAL, Optional.empty());
+	}
+
+	/**
+	 * ports are handed out round robin, the least recently handed out port is reused, if all ports are reserved
+	 */
+	public static PortAllocator inRange(int from, int to) {
+		Preconditions.checkArgument(from > 0, "from must be > 0: %s", from);
+		return new PortAllocator(from, to, to - from + 1, Optional.empty());
+	}
+}
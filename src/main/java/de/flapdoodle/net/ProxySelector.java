@@ -31,7 +31,7 @@ public interface ProxySelector {
 	}
 
 	static ProxySelector envVariableProxySelector() {
-		return EnvProxySelector.with(System.getenv());
+		return EnvProxySelector.fromEnvironment();
 	}
 
 	class NoProxy implements ProxySelector {
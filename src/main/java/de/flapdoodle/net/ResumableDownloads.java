@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.types.ThrowingFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * download into a '.part' file, which is kept on failure together with a small sidecar file,
+ * so that the next attempt can continue with a range request
+ */
+class ResumableDownloads {
+	private static final Logger logger = LoggerFactory.getLogger(ResumableDownloads.class);
+
+	static final String PART_SUFFIX = ".part";
+	static final String STATE_SUFFIX = ".state";
+
+	private static final long CHECKPOINT_INTERVAL = 1024 * 1024 * 8;
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?<start>\\d+)-(?<end>\\d+)/(?<total>\\d+|\\*)");
+
+	private ResumableDownloads() {
+		// no instance
+	}
+
+	static Path partFileOf(Path destination) {
+		return destination.resolveSibling(destination.getFileName() + PART_SUFFIX);
+	}
+
+	static Path stateFileOf(Path partFile) {
+		return partFile.resolveSibling(partFile.getFileName() + STATE_SUFFIX);
+	}
+
+	/**
+	 * @return the completed part file, the state file is removed
+	 */
+	static Path download(
+		URL url,
+		ThrowingFunction<URL, URLConnection, IOException> connectionFactory,
+		Path partFile,
+		URLConnections.DownloadCopyListener copyListener
+	) throws IOException {
+		Path stateFile = stateFileOf(partFile);
+		Optional<PartialDownload> resumeFrom = PartialDownload.read(stateFile)
+			.filter(it -> it.url().equals(url.toString()))
+			.filter(it -> it.validator().isPresent())
+			.filter(it -> Files.exists(partFile))
+			.map(it -> it.withBytesCommitted(Math.min(it.bytesCommitted(), size(partFile))));
+
+		URLConnection connection = connectionFactory.apply(url);
+		long offset = 0;
+
+		if (resumeFrom.isPresent() && resumeFrom.get().bytesCommitted() > 0) {
+			PartialDownload partial = resumeFrom.get();
+			connection.setRequestProperty("Range", "bytes=" + partial.bytesCommitted() + "-");
+			connection.setRequestProperty("If-Range", partial.validator().get());
+			offset = resumeOffset(connection, partial);
+			if (offset < 0) {
+				logger.info("could not resume download of {} ({}), start from scratch", url, partial);
+				Files.deleteIfExists(stateFile);
+				Files.deleteIfExists(partFile);
+				return download(url, connectionFactory, partFile, copyListener);
+			}
+		}
+
+		if (offset == 0) {
+			logger.debug("download {} from start", url);
+		} else {
+			logger.debug("resume download of {} at {}", url, offset);
+		}
+
+		checkResponseCode(url, connection);
+
+		long responseLength = connection.getContentLengthLong();
+		long contentLength = responseLength != -1
+			? offset + responseLength
+			: -1;
+
+		PartialDownload state = new PartialDownload(url.toString(), header(connection, "ETag"), header(connection, "Last-Modified"), offset);
+		state.write(stateFile);
+
+		copy(connection, partFile, stateFile, state, contentLength, copyListener);
+
+		Files.deleteIfExists(stateFile);
+		return partFile;
+	}
+
+	/**
+	 * @return offset to continue from, 0 if the server did send the whole content, -1 if the range was not satisfiable
+	 */
+	private static long resumeOffset(URLConnection connection, PartialDownload partial) throws IOException {
+		if (connection instanceof HttpURLConnection) {
+			int responseCode = ((HttpURLConnection) connection).getResponseCode();
+			if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+				String contentRange = connection.getHeaderField("Content-Range");
+				Matcher matcher = contentRange != null
+					? CONTENT_RANGE.matcher(contentRange)
+					: null;
+				Preconditions.checkArgument(matcher != null && matcher.matches(), "invalid content range: %s", contentRange);
+				long start = Long.parseLong(matcher.group("start"));
+				Preconditions.checkArgument(start == partial.bytesCommitted(), "content range does not match: %s != %s", start, partial.bytesCommitted());
+				return start;
+			}
+			if (responseCode == 416) {
+				return -1;
+			}
+		}
+		// validator did not match or server does not support ranges
+		return 0;
+	}
+
+	private static void copy(
+		URLConnection connection,
+		Path partFile,
+		Path stateFile,
+		PartialDownload state,
+		long contentLength,
+		URLConnections.DownloadCopyListener copyListener
+	) throws IOException {
+		URL url = connection.getURL();
+		long offset = state.bytesCommitted();
+		AtomicLong readCount = new AtomicLong(offset);
+
+		try (FileChannel destination = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+			destination.truncate(offset);
+			copyListener.downloaded(url, offset, contentLength);
+
+			try (ReadableByteChannel source = Channels.newChannel(connection.getInputStream())) {
+				Transfers.transferFrom(source, destination, offset, (block, total) -> {
+					long current = readCount.addAndGet(block);
+					Preconditions.checkArgument(contentLength == -1 || contentLength >= current, "hmm.. readCount bigger than contentLength(more than we want to): %s > %s", current, contentLength);
+					copyListener.downloaded(url, current, contentLength);
+
+					if ((current - block) / CHECKPOINT_INTERVAL != current / CHECKPOINT_INTERVAL) {
+						destination.force(false);
+						state.withBytesCommitted(current).write(stateFile);
+					}
+				});
+				if (contentLength != -1 && contentLength != readCount.get()) {
+					throw new IncompleteDownloadException(String.format("hmm.. readCount smaller than contentLength(partial download?): %s > %s", readCount.get(), contentLength));
+				}
+			}
+			finally {
+				destination.force(false);
+				state.withBytesCommitted(readCount.get()).write(stateFile);
+			}
+		}
+	}
+
+	private static void checkResponseCode(URL url, URLConnection connection) throws IOException {
+		if (connection instanceof HttpURLConnection) {
+			int responseCode = ((HttpURLConnection) connection).getResponseCode();
+			if (responseCode >= 400) {
+				throw new HttpStatusException(url, responseCode, header(connection, "Retry-After").flatMap(ResumableDownloads::seconds));
+			}
+		}
+	}
+
+	private static Optional<Long> seconds(String value) {
+		try {
+			return Optional.of(Long.parseLong(value.trim()));
+		}
+		catch (NumberFormatException ex) {
+			// http date is not supported
+			return Optional.empty();
+		}
+	}
+
+	private static long size(Path file) {
+		try {
+			return Files.size(file);
+		}
+		catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static Optional<String> header(URLConnection connection, String name) {
+		return Optional.ofNullable(connection.getHeaderField(name));
+	}
+
+	/**
+	 * the connection was closed before all the content was transferred
+	 */
+	static class IncompleteDownloadException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		IncompleteDownloadException(String message) {
+			super(message);
+		}
+	}
+
+	static class PartialDownload {
+		private static final String URL = "url";
+		private static final String ETAG = "etag";
+		private static final String LAST_MODIFIED = "lastModified";
+		private static final String BYTES_COMMITTED = "bytesCommitted";
+
+		private final String url;
+		private final Optional<String> etag;
+		private final Optional<String> lastModified;
+		private final long bytesCommitted;
+
+		PartialDownload(String url, Optional<String> etag, Optional<String> lastModified, long bytesCommitted) {
+			this.url = url;
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.bytesCommitted = bytesCommitted;
+		}
+
+		String url() {
+			return url;
+		}
+
+		long bytesCommitted() {
+			return bytesCommitted;
+		}
+
+		PartialDownload withBytesCommitted(long bytesCommitted) {
+			return new PartialDownload(url, etag, lastModified, bytesCommitted);
+		}
+
+		/**
+		 * weak etags are not allowed in If-Range
+		 */
+		Optional<String> validator() {
+			Optional<String> strongETag = etag.filter(it -> !it.startsWith("W/"));
+			return strongETag.isPresent()
+				? strongETag
+				: lastModified;
+		}
+
+		void write(Path stateFile) throws IOException {
+			Properties properties = new Properties();
+			properties.setProperty(URL, url);
+			etag.ifPresent(it -> properties.setProperty(ETAG, it));
+			lastModified.ifPresent(it -> properties.setProperty(LAST_MODIFIED, it));
+			properties.setProperty(BYTES_COMMITTED, "" + bytesCommitted);
+
+			Path tempFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+			try (OutputStream out = Files.newOutputStream(tempFile)) {
+				properties.store(out, "partial download");
+			}
+			URLConnections.move(tempFile, stateFile);
+		}
+
+		static Optional<PartialDownload> read(Path stateFile) {
+			if (!Files.exists(stateFile)) {
+				return Optional.empty();
+			}
+			Properties properties = new Properties();
+			try (InputStream in = Files.newInputStream(stateFile)) {
+				properties.load(in);
+				return Optional.of(new PartialDownload(
+					Preconditions.checkNotNull(properties.getProperty(URL), "url not set"),
+					Optional.ofNullable(properties.getProperty(ETAG)),
+					Optional.ofNullable(properties.getProperty(LAST_MODIFIED)),
+					Long.parseLong(properties.getProperty(BYTES_COMMITTED, "0"))
+				));
+			}
+			catch (IOException | RuntimeException e) {
+				logger.warn("could not read partial download state {}, start from scratch", stateFile, e);
+				return Optional.empty();
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "PartialDownload{" +
+				"url='" + url + '\'' +
+				", etag=" + etag +
+				", lastModified=" + lastModified +
+				", bytesCommitted=" + bytesCommitted +
+				'}';
+		}
+	}
+}
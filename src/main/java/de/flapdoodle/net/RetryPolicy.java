@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import org.immutables.value.Value;
+
+import javax.net.ssl.SSLException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * how often and how long to wait before a failed download is tried again
+ *
+ * the wait time grows exponentially from initialBackoff up to maxBackoff, jitter (0..1) is the fraction
+ * of it which is randomly skipped, so that clients failing at the same time do not retry at the same time.
+ */
+@Value.Immutable
+public abstract class RetryPolicy {
+	private static final Set<Integer> RETRYABLE_STATUS_CODES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+		408, 425, 429, 500, 502, 503, 504
+	)));
+
+	/**
+	 * including the first attempt
+	 */
+	@Value.Default
+	public int maxAttempts() {
+		return 3;
+	}
+
+	@Value.Default
+	public long initialBackoffMillis() {
+		return 500;
+	}
+
+	@Value.Default
+	public long maxBackoffMillis() {
+		return 30_000;
+	}
+
+	@Value.Default
+	public double multiplier() {
+		return 2.0;
+	}
+
+	@Value.Default
+	public double jitter() {
+		return 0.5;
+	}
+
+	@Value.Check
+	protected void check() {
+		Preconditions.checkArgument(maxAttempts() > 0, "maxAttempts must be > 0: %s", maxAttempts());
+		Preconditions.checkArgument(initialBackoffMillis() >= 0, "initialBackoffMillis must be >= 0: %s", initialBackoffMillis());
+		Preconditions.checkArgument(maxBackoffMillis() >= initialBackoffMillis(), "maxBackoffMillis < initialBackoffMillis: %s < %s", maxBackoffMillis(), initialBackoffMillis());
+		Preconditions.checkArgument(multiplier() >= 1.0, "multiplier must be >= 1: %s", multiplier());
+		Preconditions.checkArgument(jitter() >= 0.0 && jitter() <= 1.0, "jitter must be 0..1: %s", jitter());
+	}
+
+	/**
+	 * @param retry 1 for the first retry
+	 * @param random 0..1
+	 */
+	public long backoffMillis(int retry, double random) {
+		double backoff = Math.min(maxBackoffMillis(), initialBackoffMillis() * Math.pow(multiplier(), retry - 1));
+		return (long) (backoff * (1.0 - jitter() * random));
+	}
+
+	/**
+	 * server errors, timeouts and rate limits are retryable, other http errors are not
+	 */
+	public boolean isRetryable(int statusCode) {
+		return RETRYABLE_STATUS_CODES.contains(statusCode);
+	}
+
+	/**
+	 * connection resets, timeouts and incomplete downloads are retryable, while unknown hosts,
+	 * missing resources, invalid urls or certificates will fail again
+	 */
+	public boolean isRetryable(Exception exception) {
+		if (exception instanceof HttpStatusException) {
+			return isRetryable(((HttpStatusException) exception).statusCode());
+		}
+		return exception instanceof IOException
+			&& !(exception instanceof UnknownHostException)
+			&& !(exception instanceof FileNotFoundException)
+			&& !(exception instanceof MalformedURLException)
+			&& !(exception instanceof SSLException);
+	}
+
+	public static ImmutableRetryPolicy.Builder builder() {
+		return ImmutableRetryPolicy.builder();
+	}
+
+	public static RetryPolicy defaults() {
+		return builder().build();
+	}
+
+	public static RetryPolicy none() {
+		return builder().maxAttempts(1).build();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.types.ThrowingFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * retries a resumable download, so each attempt continues with the data of the attempt before
+ */
+class RetryingDownloads {
+	private static final Logger logger = LoggerFactory.getLogger(RetryingDownloads.class);
+
+	private RetryingDownloads() {
+		// no instance
+	}
+
+	/**
+	 * @return the completed part file
+	 */
+	static Path download(
+		URL url,
+		ThrowingFunction<URL, URLConnection, IOException> connectionFactory,
+		Path partFile,
+		URLConnections.DownloadCopyListener copyListener,
+		RetryPolicy retryPolicy,
+		RetryListener retryListener
+	) throws IOException {
+		for (int attempt = 1; ; attempt++) {
+			try {
+				return ResumableDownloads.download(url, connectionFactory, partFile, copyListener);
+			}
+			catch (IOException | RuntimeException ex) {
+				if (attempt >= retryPolicy.maxAttempts() || !retryPolicy.isRetryable(ex)) {
+					throw ex;
+				}
+				long backoff = backoffMillis(retryPolicy, attempt, ex);
+				logger.info("download of {} failed ({}), retry {} of {} in {}ms", url, ex.getMessage(), attempt, retryPolicy.maxAttempts() - 1, backoff);
+				retryListener.retry(url, attempt, ex, backoff);
+				sleep(backoff);
+			}
+		}
+	}
+
+	/**
+	 * a Retry-After header wins over the policy, but never waits longer than maxBackoff
+	 */
+	private static long backoffMillis(RetryPolicy retryPolicy, int retry, Exception ex) {
+		if (ex instanceof HttpStatusException && ((HttpStatusException) ex).retryAfterSeconds().isPresent()) {
+			long retryAfter = TimeUnit.SECONDS.toMillis(((HttpStatusException) ex).retryAfterSeconds().get());
+			return Math.max(0, Math.min(retryAfter, retryPolicy.maxBackoffMillis()));
+		}
+		return retryPolicy.backoffMillis(retry, ThreadLocalRandom.current().nextDouble());
+	}
+
+	private static void sleep(long millis) throws InterruptedIOException {
+		try {
+			Thread.sleep(millis);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for retry");
+		}
+	}
+
+	@FunctionalInterface
+	interface RetryListener {
+		void retry(URL url, int retry, Exception cause, long backoffMillis);
+	}
+}
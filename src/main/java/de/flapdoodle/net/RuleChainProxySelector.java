@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.net.URL;
+import java.util.*;
+
+/**
+ * first matching rule decides, which proxies (in order of preference) are used for a destination
+ *
+ * host patterns use the same syntax as no_proxy entries (see {@link NoProxyMatcher}). Rules can be parsed from
+ * a PAC like text, one rule per line with comma separated host patterns followed by a PAC result:
+ * <pre>
+ * # internal traffic
+ * .internal.example, 10.0.0.0/8   DIRECT
+ * *.github.com                    PROXY proxy-a:8080; PROXY proxy-b:8080; DIRECT
+ * *                               PROXY proxy:3128
+ * </pre>
+ * Decisions are cached per destination (least recently used are dropped), so the rule count does not matter
+ * for repeated requests.
+ */
+public class RuleChainProxySelector implements ProxySelector {
+	private static final int DEFAULT_CACHE_SIZE = 1024;
+
+	private final List<Rule> rules;
+	private final List<Optional<ProxyFactory>> fallback;
+	private final Map<String, List<Optional<ProxyFactory>>> cache;
+
+	private RuleChainProxySelector(List<Rule> rules, List<Optional<ProxyFactory>> fallback, int cacheSize) {
+		Preconditions.checkArgument(cacheSize > 0, "cacheSize must be > 0: %s", cacheSize);
+		this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+		this.fallback = fallback;
+		this.cache = new LinkedHashMap<String, List<Optional<ProxyFactory>>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, List<Optional<ProxyFactory>>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	@Override
+	public Optional<ProxyFactory> select(URL url) {
+		return candidates(url).get(0);
+	}
+
+	/**
+	 * @return proxies in order of preference, an empty entry means direct connection
+	 */
+	public List<Optional<ProxyFactory>> candidates(URL url) {
+		Preconditions.checkNotNull(url, "url is null");
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+		String key = url.getProtocol() + "://" + url.getHost() + ":" + port;
+		synchronized (cache) {
+			List<Optional<ProxyFactory>> cached = cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		List<Optional<ProxyFactory>> decision = decide(url.getHost(), port);
+		synchronized (cache) {
+			cache.put(key, decision);
+		}
+		return decision;
+	}
+
+	private List<Optional<ProxyFactory>> decide(String host, int port) {
+		for (Rule rule : rules) {
+			if (rule.hosts.matches(host, port)) {
+				return rule.proxies;
+			}
+		}
+		return fallback;
+	}
+
+	@Override
+	public String toString() {
+		return "RuleChainProxySelector{" +
+			"rules=" + rules +
+			", fallback=" + fallback +
+			'}';
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @see RuleChainProxySelector
+	 */
+	public static RuleChainProxySelector parse(String rules) {
+		Builder builder = builder();
+		int lineNumber = 0;
+		for (String line : rules.split("\r?\n")) {
+			lineNumber++;
+			String rule = line.trim();
+			if (rule.isEmpty() || rule.startsWith("#")) {
+				continue;
+			}
+			int resultStart = indexOfResult(rule);
+			Preconditions.checkArgument(resultStart > 0, "line %s: host patterns and DIRECT or PROXY expected: %s", lineNumber, line);
+			builder.rule(rule.substring(0, resultStart).trim(), parseResult(lineNumber, rule.substring(resultStart)));
+		}
+		return builder.build();
+	}
+
+	private static int indexOfResult(String rule) {
+		String upperCase = rule.toUpperCase(Locale.ROOT);
+		int direct = upperCase.indexOf(" DIRECT");
+		int proxy = upperCase.indexOf(" PROXY ");
+		int start = direct == -1 ? proxy : proxy == -1 ? direct : Math.min(direct, proxy);
+		return start == -1 ? -1 : start + 1;
+	}
+
+	private static List<Optional<ProxyFactory>> parseResult(int lineNumber, String result) {
+		List<Optional<ProxyFactory>> proxies = new ArrayList<>();
+		for (String part : result.split(";")) {
+			String[] tokens = part.trim().split("\\s+");
+			if (tokens.length == 1 && tokens[0].equalsIgnoreCase("DIRECT")) {
+				proxies.add(Optional.empty());
+			} else if (tokens.length == 2 && tokens[0].equalsIgnoreCase("PROXY")) {
+				int colon = tokens[1].lastIndexOf(':');
+				Preconditions.checkArgument(colon > 0, "line %s: PROXY host:port expected: %s", lineNumber, part);
+				try {
+					proxies.add(Optional.of(ProxyFactory.of(tokens[1].substring(0, colon), Integer.parseInt(tokens[1].substring(colon + 1)))));
+				}
+				catch (NumberFormatException ex) {
+					throw new IllegalArgumentException("line " + lineNumber + ": invalid port: " + part, ex);
+				}
+			} else {
+				throw new IllegalArgumentException("line " + lineNumber + ": DIRECT or PROXY host:port expected: " + part);
+			}
+		}
+		return proxies;
+	}
+
+	private static class Rule {
+		private final String hostPatterns;
+		private final NoProxyMatcher hosts;
+		private final List<Optional<ProxyFactory>> proxies;
+
+		private Rule(String hostPatterns, List<Optional<ProxyFactory>> proxies) {
+			Preconditions.checkArgument(!proxies.isEmpty(), "no proxy for %s", hostPatterns);
+			this.hostPatterns = hostPatterns;
+			this.hosts = NoProxyMatcher.of(hostPatterns);
+			this.proxies = Collections.unmodifiableList(new ArrayList<>(proxies));
+			Preconditions.checkArgument(!hosts.isEmpty(), "no host pattern: %s", hostPatterns);
+		}
+
+		@Override
+		public String toString() {
+			return hostPatterns + " -> " + proxies;
+		}
+	}
+
+	public static class Builder {
+		private final List<Rule> rules = new ArrayList<>();
+		private List<Optional<ProxyFactory>> fallback = Collections.singletonList(Optional.empty());
+		private int cacheSize = DEFAULT_CACHE_SIZE;
+
+		private Builder() {
+		}
+
+		/**
+		 * @param hostPatterns comma separated, see {@link NoProxyMatcher}
+		 */
+		public Builder rule(String hostPatterns, ProxyFactory proxy, ProxyFactory... failover) {
+			List<Optional<ProxyFactory>> proxies = new ArrayList<>();
+			proxies.add(Optional.of(proxy));
+			for (ProxyFactory it : failover) {
+				proxies.add(Optional.of(it));
+			}
+			return rule(hostPatterns, proxies);
+		}
+
+		public Builder direct(String hostPatterns) {
+			return rule(hostPatterns, Collections.singletonList(Optional.empty()));
+		}
+
+		/**
+		 * @param proxies in order of preference, empty for direct connection
+		 */
+		public Builder rule(String hostPatterns, List<Optional<ProxyFactory>> proxies) {
+			rules.add(new Rule(hostPatterns, proxies));
+			return this;
+		}
+
+		/**
+		 * used if no rule matches, direct connection if not set
+		 */
+		public Builder fallback(ProxyFactory proxy) {
+			this.fallback = Collections.singletonList(Optional.of(proxy));
+			return this;
+		}
+
+		public Builder cacheSize(int cacheSize) {
+			this.cacheSize = cacheSize;
+			return this;
+		}
+
+		public RuleChainProxySelector build() {
+			return new RuleChainProxySelector(rules, fallback, cacheSize);
+		}
+	}
+}
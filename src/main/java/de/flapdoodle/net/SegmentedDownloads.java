@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+import de.flapdoodle.types.ThrowingFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * download an url with multiple connections, each fetching a byte range of the content
+ * and writing it into its position of the destination file
+ */
+class SegmentedDownloads {
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedDownloads.class);
+
+	static final long MIN_SEGMENT_SIZE = 1024 * 1024;
+
+	private SegmentedDownloads() {
+		// no instance
+	}
+
+	static Path downloadIntoTempFile(
+		URL url,
+		ThrowingFunction<URL, URLConnection, IOException> connectionFactory,
+		int segments,
+		long minSegmentSize,
+		URLConnections.DownloadCopyListener copyListener
+	) throws IOException {
+		Preconditions.checkArgument(segments > 0, "segments must be > 0: %s", segments);
+		Preconditions.checkArgument(minSegmentSize > 0, "minSegmentSize must be > 0: %s", minSegmentSize);
+
+		Probe probe = segments > 1
+			? probe(connectionFactory.apply(url))
+			: Probe.NO_RANGES;
+
+		int segmentCount = probe.contentLength() > 0
+			? (int) Math.min(segments, probe.contentLength() / minSegmentSize)
+			: 1;
+
+		if (segmentCount < 2) {
+			logger.debug("download {} without segments", url);
+			return URLConnections.downloadIntoTempFile(connectionFactory.apply(url), copyListener);
+		}
+
+		return downloadSegments(url, connectionFactory, Segment.split(probe.contentLength(), segmentCount), probe, copyListener);
+	}
+
+	/**
+	 * @return content length and validator if server announces support for byte ranges, {@link Probe#NO_RANGES} otherwise
+	 */
+	static Probe probe(URLConnection connection) throws IOException {
+		if (connection instanceof HttpURLConnection) {
+			HttpURLConnection httpConnection = (HttpURLConnection) connection;
+			httpConnection.setRequestMethod("HEAD");
+			try {
+				if (httpConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+					return Probe.NO_RANGES;
+				}
+				String acceptRanges = httpConnection.getHeaderField("Accept-Ranges");
+				if (!"bytes".equalsIgnoreCase(acceptRanges)) {
+					return Probe.NO_RANGES;
+				}
+				// a weak etag must not be used for If-Range
+				Optional<String> validator = Optional.ofNullable(httpConnection.getHeaderField("ETag"))
+					.filter(etag -> !etag.startsWith("W/"));
+				if (!validator.isPresent()) {
+					validator = Optional.ofNullable(httpConnection.getHeaderField("Last-Modified"));
+				}
+				return new Probe(httpConnection.getContentLengthLong(), validator);
+			} finally {
+				httpConnection.disconnect();
+			}
+		}
+		return Probe.NO_RANGES;
+	}
+
+	private static Path downloadSegments(
+		URL url,
+		ThrowingFunction<URL, URLConnection, IOException> connectionFactory,
+		List<Segment> segments,
+		Probe probe,
+		URLConnections.DownloadCopyListener copyListener
+	) throws IOException {
+		long contentLength = probe.contentLength();
+		Path tempFile = Files.createTempFile("download", "");
+		boolean downloadSucceeded = false;
+		ExecutorService executor = Executors.newFixedThreadPool(segments.size(), daemonThreads(url));
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+			// positional transfers beyond the end of the file would not write anything
+			channel.write(ByteBuffer.allocate(1), contentLength - 1);
+
+			Progress progress = new Progress(url, contentLength, copyListener);
+			progress.copied(0);
+
+			List<Future<?>> futures = new ArrayList<>();
+			for (Segment segment : segments) {
+				futures.add(executor.submit(() -> {
+					downloadSegment(connectionFactory.apply(url), segment, probe, channel, progress);
+					return null;
+				}));
+			}
+			awaitAll(futures);
+			channel.force(false);
+			Preconditions.checkArgument(progress.bytesCopied() == contentLength,
+				"hmm.. readCount smaller than contentLength(partial download?): %s > %s", progress.bytesCopied(), contentLength);
+			downloadSucceeded = true;
+			return tempFile;
+		} finally {
+			executor.shutdownNow();
+			if (!downloadSucceeded) {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+	}
+
+	/**
+	 * each segment must be the requested range of the probed content, if the content did change in between
+	 * the server sends the whole content (If-Range) or a different Content-Range
+	 */
+	private static void downloadSegment(URLConnection connection, Segment segment, Probe probe, FileChannel destination, Progress progress)
+		throws IOException {
+		if (!(connection instanceof HttpURLConnection)) {
+			throw new IOException("range request " + segment.rangeHeader() + " not supported: " + connection.getURL());
+		}
+		connection.setRequestProperty("Range", segment.rangeHeader());
+		probe.validator().ifPresent(it -> connection.setRequestProperty("If-Range", it));
+
+		int responseCode = ((HttpURLConnection) connection).getResponseCode();
+		if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+			throw new IOException("range request " + segment.rangeHeader() + " failed: " + responseCode);
+		}
+		String contentRange = connection.getHeaderField("Content-Range");
+		String expectedContentRange = segment.contentRangeHeader(probe.contentLength());
+		if (contentRange == null || !expectedContentRange.equals(contentRange.trim())) {
+			throw new IOException("range request " + segment.rangeHeader() + " failed: " + contentRange + " != " + expectedContentRange);
+		}
+
+		long length = connection.getContentLengthLong();
+		Preconditions.checkArgument(length == -1 || length == segment.length(),
+			"content length of segment does not match: %s != %s", length, segment.length());
+
+		try (ReadableByteChannel source = Channels.newChannel(connection.getInputStream())) {
+			long transferred = Transfers.transferFrom(source, destination, segment.start(), (block, total) -> {
+				Preconditions.checkArgument(total <= segment.length(),
+					"hmm.. readCount bigger than segment(more than we want to): %s > %s", total, segment.length());
+				progress.copied(block);
+			});
+			Preconditions.checkArgument(transferred == segment.length(),
+				"hmm.. readCount smaller than segment(partial download?): %s > %s", transferred, segment.length());
+		}
+	}
+
+	private static void awaitAll(List<Future<?>> futures) throws IOException {
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("segmented download interrupted", e);
+		}
+		catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) throw (IOException) cause;
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private static ThreadFactory daemonThreads(URL url) {
+		AtomicInteger counter = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "download-segment-" + counter.incrementAndGet() + "-" + url.getHost());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	static class Probe {
+		static final Probe NO_RANGES = new Probe(-1, Optional.empty());
+
+		private final long contentLength;
+		private final Optional<String> validator;
+
+		@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+		Probe(long contentLength, Optional<String> validator) {
+			this.contentLength = contentLength;
+			this.validator = validator;
+		}
+
+		long contentLength() {
+			return contentLength;
+		}
+
+		/**
+		 * ETag or Last-Modified of the probed content
+		 */
+		Optional<String> validator() {
+			return validator;
+		}
+	}
+
+	/**
+	 * aggregates progress of all segments, listener calls are serialized
+	 */
+	static class Progress {
+		private final URL url;
+		private final long contentLength;
+		private final URLConnections.DownloadCopyListener copyListener;
+		private long bytesCopied = 0;
+
+		Progress(URL url, long contentLength, URLConnections.DownloadCopyListener copyListener) {
+			this.url = url;
+			this.contentLength = contentLength;
+			this.copyListener = copyListener;
+		}
+
+		synchronized void copied(long bytes) {
+			bytesCopied = bytesCopied + bytes;
+			copyListener.downloaded(url, bytesCopied, contentLength);
+		}
+
+		synchronized long bytesCopied() {
+			return bytesCopied;
+		}
+	}
+
+	static class Segment {
+		private final long start;
+		private final long end;
+
+		Segment(long start, long end) {
+			Preconditions.checkArgument(start <= end, "start > end: %s > %s", start, end);
+			this.start = start;
+			this.end = end;
+		}
+
+		long start() {
+			return start;
+		}
+
+		/**
+		 * @return last byte (inclusive)
+		 */
+		long end() {
+			return end;
+		}
+
+		long length() {
+			return end - start + 1;
+		}
+
+		String rangeHeader() {
+			return "bytes=" + start + "-" + end;
+		}
+
+		String contentRangeHeader(long contentLength) {
+			return "bytes " + start + "-" + end + "/" + contentLength;
+		}
+
+		@Override
+		public String toString() {
+			return "Segment{" + start + "-" + end + '}';
+		}
+
+		static List<Segment> split(long contentLength, int count) {
+			Preconditions.checkArgument(count > 0 && count <= contentLength, "invalid segment count %s for length %s", count, contentLength);
+			long segmentSize = contentLength / count;
+			List<Segment> ret = new ArrayList<>(count);
+			long start = 0;
+			for (int i = 0; i < count; i++) {
+				long end = i == count - 1
+					? contentLength - 1
+					: start + segmentSize - 1;
+				ret.add(new Segment(start, end));
+				start = end + 1;
+			}
+			return ret;
+		}
+	}
+}
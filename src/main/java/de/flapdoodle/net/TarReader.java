@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * minimal streaming tar reader (ustar, gnu long names, pax path and linkpath)
+ */
+class TarReader {
+	private static final int BLOCK_SIZE = 512;
+
+	static final char REGULAR = '0';
+	static final char HARD_LINK = '1';
+	static final char SYMBOLIC_LINK = '2';
+	static final char DIRECTORY = '5';
+
+	private static final char GNU_LONG_NAME = 'L';
+	private static final char GNU_LONG_LINK_NAME = 'K';
+	private static final char PAX_HEADER = 'x';
+	private static final char PAX_GLOBAL_HEADER = 'g';
+
+	private final DataInputStream in;
+	private final byte[] header = new byte[BLOCK_SIZE];
+	private long remaining = 0;
+	private long padding = 0;
+
+	TarReader(InputStream in) {
+		this.in = new DataInputStream(in);
+	}
+
+	/**
+	 * skips the content of the current entry
+	 */
+	Optional<Entry> next() throws IOException {
+		skip(remaining + padding);
+		remaining = 0;
+		padding = 0;
+
+		String longName = null;
+		String longLinkName = null;
+		Map<String, String> pax = new HashMap<>();
+
+		while (true) {
+			if (!readHeader()) {
+				return Optional.empty();
+			}
+			char type = header[156] == 0 ? REGULAR : (char) header[156];
+			long size = number(header, 124, 12);
+
+			switch (type) {
+				case GNU_LONG_NAME:
+					longName = string(readData(size));
+					continue;
+				case GNU_LONG_LINK_NAME:
+					longLinkName = string(readData(size));
+					continue;
+				case PAX_HEADER:
+					pax.putAll(paxRecords(readData(size)));
+					continue;
+				case PAX_GLOBAL_HEADER:
+					readData(size);
+					continue;
+				default:
+			}
+
+			String name = longName != null
+				? longName
+				: pax.containsKey("path")
+				? pax.get("path")
+				: nameOf(header);
+			String linkName = longLinkName != null
+				? longLinkName
+				: pax.containsKey("linkpath")
+				? pax.get("linkpath")
+				: string(header, 157, 100);
+			if (pax.containsKey("size")) {
+				size = Long.parseLong(pax.get("size"));
+			}
+
+			// every other entry type is followed by its data, which is skipped if not read
+			long dataSize = type == HARD_LINK || type == SYMBOLIC_LINK || type == DIRECTORY ? 0 : size;
+			remaining = dataSize;
+			padding = padding(dataSize);
+			return Optional.of(new Entry(name, type == '7' ? REGULAR : type, (int) number(header, 100, 8), size, linkName));
+		}
+	}
+
+	/**
+	 * content of the current entry
+	 */
+	InputStream content() {
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = in.read();
+				if (read == -1) {
+					throw new EOFException("unexpected end of tar");
+				}
+				remaining--;
+				return read;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (remaining <= 0) {
+					return -1;
+				}
+				int read = in.read(b, off, (int) Math.min(len, remaining));
+				if (read == -1) {
+					throw new EOFException("unexpected end of tar");
+				}
+				remaining = remaining - read;
+				return read;
+			}
+		};
+	}
+
+	/**
+	 * @return false at the end of the archive
+	 */
+	private boolean readHeader() throws IOException {
+		int read = 0;
+		while (read < BLOCK_SIZE) {
+			int count = in.read(header, read, BLOCK_SIZE - read);
+			if (count == -1) {
+				Preconditions.checkArgument(read == 0, "truncated tar header");
+				return false;
+			}
+			read = read + count;
+		}
+		if (isZero(header)) {
+			return false;
+		}
+		long checksum = number(header, 148, 8);
+		Preconditions.checkArgument(checksum == checksumOf(header), "invalid tar header checksum: %s != %s", checksum, checksumOf(header));
+		return true;
+	}
+
+	private byte[] readData(long size) throws IOException {
+		Preconditions.checkArgument(size >= 0 && size < 1024 * 1024, "invalid tar header size: %s", size);
+		byte[] data = new byte[(int) size];
+		in.readFully(data);
+		skip(padding(size));
+		return data;
+	}
+
+	private void skip(long count) throws IOException {
+		long left = count;
+		while (left > 0) {
+			long skipped = in.skip(left);
+			if (skipped <= 0) {
+				if (in.read() == -1) {
+					throw new EOFException("unexpected end of tar");
+				}
+				skipped = 1;
+			}
+			left = left - skipped;
+		}
+	}
+
+	private static long padding(long size) {
+		return (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+	}
+
+	private static String nameOf(byte[] header) {
+		String name = string(header, 0, 100);
+		String prefix = "ustar".equals(string(header, 257, 5))
+			? string(header, 345, 155)
+			: "";
+		return prefix.isEmpty()
+			? name
+			: prefix + "/" + name;
+	}
+
+	private static Map<String, String> paxRecords(byte[] data) {
+		// each record: "<length> <key>=<value>\n"
+		Map<String, String> records = new HashMap<>();
+		int position = 0;
+		while (position < data.length) {
+			int space = position;
+			while (space < data.length && data[space] != ' ') {
+				space++;
+			}
+			Preconditions.checkArgument(space < data.length, "invalid pax header");
+			int length = Integer.parseInt(new String(data, position, space - position, StandardCharsets.UTF_8));
+			Preconditions.checkArgument(length > space - position && position + length <= data.length, "invalid pax record length: %s", length);
+			String record = new String(data, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+			int equals = record.indexOf('=');
+			Preconditions.checkArgument(equals > 0, "invalid pax record: %s", record);
+			records.put(record.substring(0, equals), record.substring(equals + 1));
+			position = position + length;
+		}
+		return records;
+	}
+
+	private static long checksumOf(byte[] header) {
+		long sum = 0;
+		for (int i = 0; i < header.length; i++) {
+			sum = sum + (i >= 148 && i < 156 ? ' ' : header[i] & 0xff);
+		}
+		return sum;
+	}
+
+	/**
+	 * octal, or base-256 if the highest bit is set
+	 */
+	private static long number(byte[] header, int offset, int length) {
+		if ((header[offset] & 0x80) != 0) {
+			long value = header[offset] & 0x7f;
+			for (int i = 1; i < length; i++) {
+				value = (value << 8) | (header[offset + i] & 0xff);
+			}
+			return value;
+		}
+		long value = 0;
+		for (int i = offset; i < offset + length; i++) {
+			byte b = header[i];
+			if (b >= '0' && b <= '7') {
+				value = value * 8 + (b - '0');
+			} else if (b == 0 || (b == ' ' && value > 0)) {
+				break;
+			}
+		}
+		return value;
+	}
+
+	private static String string(byte[] data) {
+		return string(data, 0, data.length);
+	}
+
+	private static String string(byte[] data, int offset, int length) {
+		int end = offset;
+		while (end < offset + length && data[end] != 0) {
+			end++;
+		}
+		return new String(data, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	private static boolean isZero(byte[] block) {
+		for (byte b : block) {
+			if (b != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static class Entry {
+		private final String name;
+		private final char type;
+		private final int mode;
+		private final long size;
+		private final String linkName;
+
+		Entry(String name, char type, int mode, long size, String linkName) {
+			this.name = name;
+			this.type = type;
+			this.mode = mode;
+			this.size = size;
+			this.linkName = linkName;
+		}
+
+		String name() {
+			return name;
+		}
+
+		char type() {
+			return type;
+		}
+
+		int mode() {
+			return mode;
+		}
+
+		long size() {
+			return size;
+		}
+
+		String linkName() {
+			return linkName;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry{" +
+				"name='" + name + '\'' +
+				", type=" + type +
+				", mode=" + Integer.toOctalString(mode) +
+				", size=" + size +
+				'}';
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * token bucket to limit the bandwidth of one or more downloads
+ *
+ * acquire never fails, it takes the tokens (the bucket may go into debt) and sleeps
+ * until the bucket would be balanced again. So blocks bigger than the burst size are possible.
+ */
+public class TokenBucket {
+	private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+	private final long bytesPerSecond;
+	private final long burst;
+
+	private double tokens;
+	private long lastRefill;
+
+	TokenBucket(long bytesPerSecond, long burst, long now) {
+		Preconditions.checkArgument(bytesPerSecond > 0, "bytesPerSecond must be > 0: %s", bytesPerSecond);
+		Preconditions.checkArgument(burst > 0, "burst must be > 0: %s", burst);
+		this.bytesPerSecond = bytesPerSecond;
+		this.burst = burst;
+		this.tokens = burst;
+		this.lastRefill = now;
+	}
+
+	public long bytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * blocks until the bytes are covered by the rate limit
+	 * if the thread is interrupted, it returns early with the interrupted flag set
+	 */
+	public void acquire(long bytes) {
+		long waitNanos = reserve(bytes, System.nanoTime());
+		if (waitNanos > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(waitNanos);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return nanos to wait until the reserved bytes are covered
+	 */
+	synchronized long reserve(long bytes, long now) {
+		long elapsed = now - lastRefill;
+		if (elapsed > 0) {
+			tokens = Math.min(burst, tokens + (double) elapsed * bytesPerSecond / NANOS_PER_SECOND);
+			lastRefill = now;
+		}
+		tokens = tokens - bytes;
+		return tokens < 0
+			? (long) (-tokens * NANOS_PER_SECOND / bytesPerSecond)
+			: 0;
+	}
+
+	public static TokenBucket of(long bytesPerSecond) {
+		return of(bytesPerSecond, bytesPerSecond);
+	}
+
+	public static TokenBucket of(long bytesPerSecond, long burst) {
+		return new TokenBucket(bytesPerSecond, burst, System.nanoTime());
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.hash.Hasher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * channel based copy, so that the file system implementation can take the shortest path
+ */
+class Transfers {
+
+	static final int BLOCK_SIZE = 1024 * 8 * 8;
+
+	private Transfers() {
+		// no instance
+	}
+
+	/**
+	 * transfer blockwise from source into destination starting at position,
+	 * the destination file must not be smaller than position
+	 *
+	 * @return bytes transferred
+	 */
+	static long transferFrom(ReadableByteChannel source, FileChannel destination, long position, BlockListener listener) throws IOException {
+		long total = 0;
+		long transferred;
+		// a blocking source only returns 0 at the end of the stream
+		while ((transferred = destination.transferFrom(source, position + total, BLOCK_SIZE)) > 0) {
+			total = total + transferred;
+			listener.transferred(transferred, total);
+		}
+		return total;
+	}
+
+	/**
+	 * every byte read from the returned channel is passed to each hasher
+	 */
+	static ReadableByteChannel hashing(ReadableByteChannel source, Hasher... hashers) {
+		return hashers.length > 0
+			? new HashingChannel(source, hashers)
+			: source;
+	}
+
+	static class HashingChannel implements ReadableByteChannel {
+		private final ReadableByteChannel delegate;
+		private final Hasher[] hashers;
+
+		private HashingChannel(ReadableByteChannel delegate, Hasher[] hashers) {
+			this.delegate = delegate;
+			this.hashers = hashers;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int start = dst.position();
+			int read = delegate.read(dst);
+			if (read > 0) {
+				for (Hasher hasher : hashers) {
+					ByteBuffer readBytes = dst.duplicate();
+					readBytes.limit(start + read);
+					readBytes.position(start);
+					hasher.update(readBytes);
+				}
+			}
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return delegate.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+	}
+
+	@FunctionalInterface
+	interface BlockListener {
+		/**
+		 * @param block bytes of this block
+		 * @param total bytes transferred so far
+		 */
+		void transferred(long block, long total) throws IOException;
+	}
+}
@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.checks.Preconditions;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.util.*;
+
+/**
+ * https over a http proxy with basic auth
+ *
+ * the jdk does not send the Proxy-Authorization header with the CONNECT request, so the tunnel is
+ * opened here: CONNECT with Proxy-Authorization, then tls over the tunnel socket and a simple
+ * http/1.1 request (one request per connection).
+ */
+class TunnelingHttpsURLConnection extends HttpsURLConnection {
+	private static final String CRLF = "\r\n";
+	// same as the jdk default
+	private static final int MAX_REDIRECTS = 20;
+	private static final int HTTP_TEMPORARY_REDIRECT = 307;
+	private static final int HTTP_PERMANENT_REDIRECT = 308;
+
+	private final Proxy proxy;
+	private final String proxyAuthorization;
+
+	private SSLSocket socket;
+	private final List<String[]> responseHeaders = new ArrayList<>();
+	private InputStream body;
+
+	TunnelingHttpsURLConnection(URL url, Proxy proxy, String proxyUser, String proxyPassword) {
+		super(url);
+		Preconditions.checkArgument(proxy.type() == Proxy.Type.HTTP, "http proxy expected: %s", proxy);
+		Preconditions.checkArgument(proxy.address() instanceof InetSocketAddress, "proxy address expected: %s", proxy);
+		this.proxy = proxy;
+		this.proxyAuthorization = "Basic " + Base64.getEncoder().encodeToString((proxyUser + ":" + proxyPassword).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * redirects are followed like the jdk does it, if enabled, but only to other https urls
+	 */
+	@Override
+	public void connect() throws IOException {
+		if (connected) {
+			return;
+		}
+		for (int redirects = 0; ; redirects++) {
+			request();
+			Optional<URL> location = redirectLocation();
+			if (!location.isPresent()) {
+				connected = true;
+				return;
+			}
+			disconnect();
+			if (redirects >= MAX_REDIRECTS) {
+				throw new ProtocolException("Server redirected too many times (" + MAX_REDIRECTS + ") for URL: " + url);
+			}
+			if (responseCode == HTTP_SEE_OTHER && !method.equals("HEAD")) {
+				method = "GET";
+			}
+			url = location.get();
+		}
+	}
+
+	private Optional<URL> redirectLocation() throws IOException {
+		boolean redirect = responseCode == HTTP_MOVED_PERM || responseCode == HTTP_MOVED_TEMP || responseCode == HTTP_SEE_OTHER
+			|| responseCode == HTTP_TEMPORARY_REDIRECT || responseCode == HTTP_PERMANENT_REDIRECT;
+		String location = responseHeader("Location");
+		if (!getInstanceFollowRedirects() || !redirect || location == null) {
+			return Optional.empty();
+		}
+		URL target = new URL(url, location);
+		if (!target.getProtocol().equals("https")) {
+			disconnect();
+			throw new IOException("redirect from " + url + " to " + target + " is not followed");
+		}
+		return Optional.of(target);
+	}
+
+	private void request() throws IOException {
+		responseHeaders.clear();
+		String host = url.getHost();
+		int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+
+		Socket tunnel = openTunnel(host, port);
+		try {
+			socket = (SSLSocket) getSSLSocketFactory().createSocket(tunnel, host, port, true);
+			boolean defaultHostnameVerifier = getHostnameVerifier() == HttpsURLConnection.getDefaultHostnameVerifier();
+			if (defaultHostnameVerifier) {
+				SSLParameters parameters = socket.getSSLParameters();
+				parameters.setEndpointIdentificationAlgorithm("HTTPS");
+				socket.setSSLParameters(parameters);
+			}
+			socket.startHandshake();
+			if (!defaultHostnameVerifier && !getHostnameVerifier().verify(host, socket.getSession())) {
+				throw new SSLPeerUnverifiedException("hostname " + host + " not verified");
+			}
+
+			sendRequest(host, port);
+			InputStream in = new BufferedInputStream(socket.getInputStream());
+			readResponseHeaders(in);
+			body = bodyOf(in);
+		}
+		catch (IOException | RuntimeException ex) {
+			tunnel.close();
+			throw ex;
+		}
+	}
+
+	private Socket openTunnel(String host, int port) throws IOException {
+		Socket tunnel = new Socket();
+		try {
+			tunnel.connect(proxy.address(), getConnectTimeout());
+			tunnel.setSoTimeout(getReadTimeout());
+
+			String target = host + ":" + port;
+			write(tunnel.getOutputStream(), "CONNECT " + target + " HTTP/1.1" + CRLF
+				+ "Host: " + target + CRLF
+				+ "Proxy-Authorization: " + proxyAuthorization + CRLF
+				+ CRLF);
+
+			// unbuffered, nothing after the header must be consumed
+			InputStream in = tunnel.getInputStream();
+			String statusLine = readLine(in);
+			String line;
+			while (!(line = readLine(in)).isEmpty()) {
+				// proxy headers are not used
+			}
+			if (statusCodeOf(statusLine) != HTTP_OK) {
+				throw new IOException("Unable to tunnel through proxy. Proxy returns \"" + statusLine + "\"");
+			}
+			return tunnel;
+		}
+		catch (IOException | RuntimeException ex) {
+			tunnel.close();
+			throw ex;
+		}
+	}
+
+	private void sendRequest(String host, int port) throws IOException {
+		StringBuilder request = new StringBuilder();
+		String file = url.getFile().isEmpty() ? "/" : url.getFile();
+		request.append(getRequestMethod()).append(' ').append(file).append(" HTTP/1.1").append(CRLF);
+		request.append("Host: ").append(port == url.getDefaultPort() ? host : host + ":" + port).append(CRLF);
+		getRequestProperties().forEach((key, values) -> {
+			if (key != null && !key.equalsIgnoreCase("Host") && !key.equalsIgnoreCase("Connection") && !key.equalsIgnoreCase("Proxy-Authorization")) {
+				values.forEach(value -> request.append(key).append(": ").append(value).append(CRLF));
+			}
+		});
+		request.append("Connection: close").append(CRLF);
+		request.append(CRLF);
+		write(socket.getOutputStream(), request.toString());
+	}
+
+	private void readResponseHeaders(InputStream in) throws IOException {
+		String statusLine = readLine(in);
+		responseCode = statusCodeOf(statusLine);
+		String[] parts = statusLine.split(" ", 3);
+		responseMessage = parts.length > 2 ? parts[2] : "";
+		responseHeaders.add(new String[] { null, statusLine });
+
+		String line;
+		while (!(line = readLine(in)).isEmpty()) {
+			int colon = line.indexOf(':');
+			if (colon > 0) {
+				responseHeaders.add(new String[] { line.substring(0, colon).trim(), line.substring(colon + 1).trim() });
+			}
+		}
+	}
+
+	private InputStream bodyOf(InputStream in) {
+		if (getRequestMethod().equals("HEAD") || responseCode == HTTP_NO_CONTENT || responseCode == HTTP_NOT_MODIFIED || responseCode / 100 == 1) {
+			return new ByteArrayInputStream(new byte[0]);
+		}
+		if ("chunked".equalsIgnoreCase(responseHeader("Transfer-Encoding"))) {
+			return new ChunkedInputStream(in);
+		}
+		String contentLength = responseHeader("Content-Length");
+		return contentLength != null
+			? new BoundedInputStream(in, Long.parseLong(contentLength.trim()))
+			: in;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		connect();
+		if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+			throw new FileNotFoundException(url.toString());
+		}
+		if (responseCode >= 400) {
+			throw new IOException("Server returned HTTP response code: " + responseCode + " for URL: " + url);
+		}
+		return body;
+	}
+
+	@Override
+	public InputStream getErrorStream() {
+		return connected && responseCode >= 400
+			? body
+			: null;
+	}
+
+	@Override
+	public int getResponseCode() throws IOException {
+		connect();
+		return responseCode;
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return ensureConnected()
+			? responseHeader(name)
+			: null;
+	}
+
+	private String responseHeader(String name) {
+		String value = null;
+		for (String[] header : responseHeaders) {
+			if (header[0] != null && header[0].equalsIgnoreCase(name)) {
+				value = header[1];
+			}
+		}
+		return value;
+	}
+
+	@Override
+	public String getHeaderField(int n) {
+		return ensureConnected() && n >= 0 && n < responseHeaders.size()
+			? responseHeaders.get(n)[1]
+			: null;
+	}
+
+	@Override
+	public String getHeaderFieldKey(int n) {
+		return ensureConnected() && n >= 0 && n < responseHeaders.size()
+			? responseHeaders.get(n)[0]
+			: null;
+	}
+
+	@Override
+	public Map<String, List<String>> getHeaderFields() {
+		if (!ensureConnected()) {
+			return Collections.emptyMap();
+		}
+		Map<String, List<String>> fields = new LinkedHashMap<>();
+		for (String[] header : responseHeaders) {
+			fields.computeIfAbsent(header[0], it -> new ArrayList<>()).add(header[1]);
+		}
+		return Collections.unmodifiableMap(fields);
+	}
+
+	private boolean ensureConnected() {
+		try {
+			connect();
+			return true;
+		}
+		catch (IOException e) {
+			return false;
+		}
+	}
+
+	@Override
+	public void disconnect() {
+		if (socket != null) {
+			try {
+				socket.close();
+			}
+			catch (IOException ignored) {
+				// closed anyway
+			}
+		}
+	}
+
+	@Override
+	public boolean usingProxy() {
+		return true;
+	}
+
+	@Override
+	public String getCipherSuite() {
+		checkConnected();
+		return socket.getSession().getCipherSuite();
+	}
+
+	@Override
+	public Certificate[] getLocalCertificates() {
+		checkConnected();
+		return socket.getSession().getLocalCertificates();
+	}
+
+	@Override
+	public Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+		checkConnected();
+		return socket.getSession().getPeerCertificates();
+	}
+
+	private void checkConnected() {
+		if (!connected) {
+			throw new IllegalStateException("not connected");
+		}
+	}
+
+	private static int statusCodeOf(String statusLine) throws IOException {
+		String[] parts = statusLine.split(" ", 3);
+		try {
+			Preconditions.checkArgument(parts.length >= 2 && parts[0].startsWith("HTTP/"), "invalid status line");
+			return Integer.parseInt(parts[1]);
+		}
+		catch (IllegalArgumentException ex) {
+			throw new IOException("invalid http response: " + statusLine, ex);
+		}
+	}
+
+	private static void write(OutputStream out, String text) throws IOException {
+		out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+		out.flush();
+	}
+
+	private static String readLine(InputStream in) throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int next;
+		while ((next = in.read()) != -1 && next != '\n') {
+			if (next != '\r') {
+				line.write(next);
+			}
+		}
+		if (next == -1 && line.size() == 0) {
+			throw new EOFException("unexpected end of http response");
+		}
+		return new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+	}
+
+	private static class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+
+		private BoundedInputStream(InputStream in, long length) {
+			super(in);
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read();
+			if (read == -1) {
+				throw unexpectedEnd();
+			}
+			remaining--;
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int read = super.read(b, off, (int) Math.min(len, remaining));
+			if (read == -1) {
+				throw unexpectedEnd();
+			}
+			remaining = remaining - read;
+			return read;
+		}
+
+		private EOFException unexpectedEnd() {
+			return new EOFException("unexpected end of response, " + remaining + " bytes missing");
+		}
+	}
+
+	private static class ChunkedInputStream extends InputStream {
+		private final InputStream in;
+		private long remainingInChunk = 0;
+		private boolean done = false;
+
+		private ChunkedInputStream(InputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			int read = read(single, 0, 1);
+			return read == -1 ? -1 : single[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			int read = in.read(b, off, (int) Math.min(len, remainingInChunk));
+			if (read == -1) {
+				throw new EOFException("unexpected end of chunked response");
+			}
+			remainingInChunk = remainingInChunk - read;
+			if (remainingInChunk == 0) {
+				readLine(in);
+			}
+			return read;
+		}
+
+		private boolean nextChunk() throws IOException {
+			if (done) {
+				return false;
+			}
+			if (remainingInChunk == 0) {
+				String sizeLine = readLine(in);
+				int extension = sizeLine.indexOf(';');
+				remainingInChunk = Long.parseLong((extension != -1 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+				if (remainingInChunk == 0) {
+					String trailer;
+					while (!(trailer = readLine(in)).isEmpty()) {
+						// trailers are ignored
+					}
+					done = true;
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
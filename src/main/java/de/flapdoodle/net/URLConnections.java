@@ -17,9 +17,9 @@
 package de.flapdoodle.net;
 
 import de.flapdoodle.checks.Preconditions;
-import de.flapdoodle.types.Optionals;
+import de.flapdoodle.hash.Hasher;
+import de.flapdoodle.types.ThrowingConsumer;
 import de.flapdoodle.types.ThrowingFunction;
-import de.flapdoodle.types.ThrowingSupplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -27,9 +27,17 @@ import java.io.*;
 import java.net.Proxy;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.*;
-import java.util.Base64;
+import java.util.Arrays;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
 import java.util.logging.Level;
 
 public class URLConnections {
@@ -37,8 +45,10 @@ public class URLConnections {
 
 	public static final String USE_ENV_PROXY_SELECTOR = "de.flapdoodle.net.useEnvProxySelector";
 
-	private static final int BUFFER_LENGTH = 1024 * 8 * 8;
+	public static final String TUNNEL_HTTPS_OVER_PROXY_WITH_BASIC_AUTH = "de.flapdoodle.net.tunnelHttpsOverProxyWithBasicAuth";
+
 	private static final boolean useEnvProxySelector = System.getProperty(USE_ENV_PROXY_SELECTOR, "false").equals("true");
+	private static final boolean tunnelHttpsOverProxyWithBasicAuth = System.getProperty(TUNNEL_HTTPS_OVER_PROXY_WITH_BASIC_AUTH, "false").equals("true");
 
 	public static URLConnection urlConnectionOf(URL url) throws IOException {
 		return urlConnectionOf(url, Optional.empty());
@@ -64,60 +74,111 @@ public class URLConnections {
 		return Optional.empty();
 	}
 
+	/**
+	 * proxy used by {@link #urlConnectionOf(URL)}
+	 */
+	static Optional<Proxy> proxyOf(URL url) {
+		return useEnvProxySelector
+			? DefaultHttpConnections.INSTANCE.proxyOf(url)
+			: envVariableProxySelectorHint();
+	}
+
 	@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 	private static URLConnection urlConnectionOf(URL url, Optional<Proxy> providedProxy) throws IOException {
 		logger.debug(USE_ENV_PROXY_SELECTOR + "={}", useEnvProxySelector);
 
 		Optional<Proxy> proxy = providedProxy.isPresent()
 			? providedProxy
-			: useEnvProxySelector
-			? ProxySelector.envVariableProxySelector().select(url).map(ProxyFactory::create)
-			: envVariableProxySelectorHint();
+			: proxyOf(url);
 
-		URLConnection openConnection = Optionals.with(proxy)
-			.map(url::openConnection)
-			.orElseGet(url::openConnection);
-
-		proxy.ifPresent(it -> {
-			if (it instanceof Proxys.UseBasicAuth) {
-				Proxys.UseBasicAuth withBasicAuth = (Proxys.UseBasicAuth) it;
-				String authHeader = new String(Base64.getEncoder().encode((withBasicAuth.proxyUser() + ":" + withBasicAuth.proxyPassword()).getBytes()));
-				openConnection.setRequestProperty("Proxy-Authorization", "Basic " + authHeader);
-
-				if (url.getProtocol().equals("https")) {
-					// the jdk creates a tunnel https connection proxy request with no way to add an header to this request
-					// if you read this comment and know how to fix it, please open a PR:)
-					throw new IllegalArgumentException("access of a https url over a proxy with proxy authorization is not supported");
-				}
-			}
-		});
+		return DefaultHttpConnections.INSTANCE.open(url, proxy);
+	}
 
-		return openConnection;
+	private static class DefaultHttpConnections {
+		private static final HttpConnections INSTANCE = HttpConnections.builder()
+			.proxySelector(useEnvProxySelector ? ProxySelector.envVariableProxySelector() : ProxySelector.noProxy())
+			.tunnelHttpsOverProxyWithBasicAuth(tunnelHttpsOverProxyWithBasicAuth)
+			.build();
 	}
 
 	public static byte[] downloadIntoByteArray(URLConnection connection) throws IOException {
 		return downloadIntoByteArray(connection, (url, bytesCopied, contentLength) -> {});
 	}
 
+	/**
+	 * the array is allocated with the content length, so it is only copied if the content length is not known
+	 */
 	public static byte[] downloadIntoByteArray(URLConnection connection, DownloadCopyListener copyListener) throws IOException {
-		ByteArrayOutputStream os=new ByteArrayOutputStream();
-		downloadAndCopy(connection, () -> new BufferedOutputStream(os), copyListener);
-		return os.toByteArray();
+		ByteBuffer buffer = InMemoryDownloads.download(connection, copyListener, InMemoryDownloads.Allocator.heap(), InMemoryDownloads.NO_MEMORY_MAP);
+		byte[] content = buffer.array();
+		return content.length == buffer.limit()
+			? content
+			: Arrays.copyOf(content, buffer.limit());
+	}
+
+	/**
+	 * @return read only buffer, memory mapped from a temp file if the content is bigger than 64MB
+	 */
+	public static ByteBuffer downloadIntoByteBuffer(URLConnection connection, DownloadCopyListener copyListener) throws IOException {
+		return InMemoryDownloads.download(connection, copyListener, InMemoryDownloads.Allocator.heap(), InMemoryDownloads.MEMORY_MAP_THRESHOLD)
+			.asReadOnlyBuffer();
+	}
+
+	/**
+	 * download into a direct buffer from the pool, which is given back if the result is closed
+	 */
+	public static ByteBufferPool.PooledBuffer downloadIntoByteBuffer(URLConnection connection, DownloadCopyListener copyListener, ByteBufferPool pool) throws IOException {
+		return new ByteBufferPool.PooledBuffer(pool, InMemoryDownloads.download(connection, copyListener, InMemoryDownloads.Allocator.pooled(pool), InMemoryDownloads.NO_MEMORY_MAP));
 	}
 
 	public static void downloadIntoFile(URLConnection connection, Path destination, DownloadCopyListener copyListener) throws IOException {
 		downloadTo(connection, destination, c -> downloadIntoTempFile(c, copyListener));
 	}
 
+	/**
+	 * the download is only moved into the destination if all checksums match
+	 */
+	public static void downloadIntoFile(URLConnection connection, Path destination, DownloadCopyListener copyListener, Checksum... checksums) throws IOException {
+		downloadTo(connection, destination, c -> downloadIntoTempFile(c, copyListener, checksums));
+	}
+
+	public static Path downloadIntoTempFile(URLConnection connection, DownloadCopyListener copyListener, Checksum... checksums) throws IOException {
+		Hasher[] hashers = new Hasher[checksums.length];
+		for (int i = 0; i < checksums.length; i++) {
+			hashers[i] = checksums[i].hasher();
+		}
+		Path tempFile = downloadIntoTempFile(connection, copyListener, hashers);
+		boolean checksumsMatch=false;
+		try {
+			for (int i = 0; i < checksums.length; i++) {
+				String hash = hashers[i].hashAsString();
+				Preconditions.checkArgument(checksums[i].matches(hash), "checksum mismatch for %s: %s != %s (%s)", connection.getURL(), hash, checksums[i].hash(), checksums[i].algorithm());
+			}
+			checksumsMatch=true;
+			return tempFile;
+		} finally {
+			if (!checksumsMatch) {
+				Files.delete(tempFile);
+			}
+		}
+	}
+
 	public static Path downloadIntoTempFile(URLConnection connection) throws IOException {
 		return downloadIntoTempFile(connection, (url, bytesCopied, contentLength) -> {});
 	}
 
 	public static Path downloadIntoTempFile(URLConnection connection, DownloadCopyListener copyListener) throws IOException {
+		return downloadIntoTempFile(connection, copyListener, new Hasher[0]);
+	}
+
+	/**
+	 * each hasher is updated with the downloaded content while it is written into the file
+	 */
+	public static Path downloadIntoTempFile(URLConnection connection, DownloadCopyListener copyListener, Hasher... hashers) throws IOException {
 		Path tempFile = java.nio.file.Files.createTempFile("download", "");
 		boolean downloadSucceeded=false;
 		try {
-			downloadAndCopy(connection, () -> new BufferedOutputStream(Files.newOutputStream(tempFile.toFile().toPath())), copyListener);
+			downloadAndTransfer(connection, tempFile, copyListener, hashers);
 			downloadSucceeded=true;
 			return tempFile;
 		} finally {
@@ -127,12 +188,125 @@ public class URLConnections {
 		}
 	}
 
-	protected static <E extends Exception> void downloadTo(URLConnection connection, Path destination, ThrowingFunction<URLConnection, Path, E> urlToTempFile) throws IOException,E {
+	/**
+	 * download and record a {@link DownloadMetric} for it, successful or not
+	 */
+	public static void downloadIntoFile(URL url, Path destination, DownloadCopyListener copyListener, DownloadMetrics metrics) throws IOException {
+		Optional<Proxy> proxy = proxyOf(url);
+		measured(url, proxy, copyListener, metrics, () -> 0,
+			listener -> downloadTo(urlConnectionOf(url, proxy), destination, c -> downloadIntoTempFile(c, listener)));
+	}
+
+	/**
+	 * extract while downloading into a staging file or directory next to the destination,
+	 * which is moved into the destination after everything was extracted
+	 *
+	 * @param destination file for {@link Archives.Type#GZIP}, directory otherwise
+	 */
+	public static void downloadAndExtract(URLConnection connection, Path destination, Archives.Type type, DownloadCopyListener copyListener) throws IOException {
+		Preconditions.checkArgument(!Files.exists(destination), "destination exists: %s", destination);
+		Path staging = destination.toAbsolutePath().resolveSibling("." + destination.getFileName() + "." + UUID.randomUUID() + ".extracting");
+		boolean moved = false;
+		try {
+			try (CountingInputStream source = new CountingInputStream(connection, copyListener)) {
+				Archives.extract(source, type, staging);
+				source.drain();
+			}
+			move(staging, destination);
+			moved = true;
+		}
+		finally {
+			if (!moved) {
+				Archives.deleteAll(staging);
+			}
+		}
+	}
+
+	/**
+	 * download with up to {@code segments} parallel range requests, falls back to one connection
+	 * if the server does not support byte ranges
+	 */
+	public static void downloadIntoFile(URL url, Path destination, int segments, DownloadCopyListener copyListener) throws IOException {
+		downloadTo(url, destination, it -> downloadIntoTempFile(it, segments, copyListener));
+	}
+
+	public static Path downloadIntoTempFile(URL url, int segments, DownloadCopyListener copyListener) throws IOException {
+		return SegmentedDownloads.downloadIntoTempFile(url, URLConnections::urlConnectionOf, segments, SegmentedDownloads.MIN_SEGMENT_SIZE, copyListener);
+	}
+
+	/**
+	 * download into a '.part' file next to the destination, which is kept if the download fails,
+	 * so that the next call can resume it
+	 */
+	public static void downloadIntoFileResumable(URL url, Path destination, DownloadCopyListener copyListener) throws IOException {
+		Path partFile = ResumableDownloads.partFileOf(destination);
+		downloadTo(url, destination, it -> ResumableDownloads.download(it, URLConnections::urlConnectionOf, partFile, copyListener));
+	}
+
+	/**
+	 * resumable download, failures classified as transient by the retry policy are retried
+	 * and continue with the data already downloaded
+	 */
+	public static void downloadIntoFileResumable(URL url, Path destination, DownloadCopyListener copyListener, RetryPolicy retryPolicy) throws IOException {
+		downloadIntoFileResumable(url, destination, copyListener, retryPolicy, DownloadMetrics.noop());
+	}
+
+	public static void downloadIntoFileResumable(URL url, Path destination, DownloadCopyListener copyListener, RetryPolicy retryPolicy, DownloadMetrics metrics) throws IOException {
+		Optional<Proxy> proxy = proxyOf(url);
+		Path partFile = ResumableDownloads.partFileOf(destination);
+		AtomicInteger retries = new AtomicInteger();
+		measured(url, proxy, copyListener, metrics, retries::get,
+			listener -> downloadTo(url, destination, it -> RetryingDownloads.download(it, u -> urlConnectionOf(u, proxy), partFile, listener, retryPolicy,
+				(u, retry, cause, backoffMillis) -> retries.incrementAndGet())));
+	}
+
+	/**
+	 * download in a background task, see {@link AsyncDownloads}
+	 */
+	public static CompletableFuture<Path> downloadIntoFileAsync(URL url, Path destination, DownloadCopyListener copyListener) {
+		return DefaultAsyncDownloads.INSTANCE.downloadIntoFile(url, destination, copyListener);
+	}
+
+	public static CompletableFuture<Path> downloadIntoTempFileAsync(URL url, DownloadCopyListener copyListener) {
+		return DefaultAsyncDownloads.INSTANCE.downloadIntoTempFile(url, copyListener);
+	}
+
+	private static class DefaultAsyncDownloads {
+		private static final int MAX_PER_HOST = 4;
+		private static final AsyncDownloads INSTANCE = AsyncDownloads.withVirtualThreads(MAX_PER_HOST);
+	}
+
+	protected static <T, E extends Exception> void downloadTo(T source, Path destination, ThrowingFunction<T, Path, E> sourceToTempFile) throws IOException,E {
 		Preconditions.checkArgument(!Files.exists(destination), "destination exists: %s",destination);
-		Path tempFile = urlToTempFile.apply(connection);
+		Path tempFile = sourceToTempFile.apply(source);
 		move(tempFile, destination);
 	}
 
+	@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+	private static void measured(
+		URL url,
+		Optional<Proxy> proxy,
+		DownloadCopyListener copyListener,
+		DownloadMetrics metrics,
+		IntSupplier retries,
+		ThrowingConsumer<DownloadCopyListener, IOException> download
+	) throws IOException {
+		MeasuringListener listener = new MeasuringListener(copyListener);
+		try {
+			download.accept(listener);
+			metrics.record(listener.metric(url, proxy)
+				.retries(retries.getAsInt())
+				.build());
+		}
+		catch (IOException | RuntimeException ex) {
+			metrics.record(listener.metric(url, proxy)
+				.retries(retries.getAsInt())
+				.failure(ex.getClass().getName() + ": " + ex.getMessage())
+				.build());
+			throw ex;
+		}
+	}
+
 	//VisibleForTest
 	protected static void move(Path tempFile, Path destination) throws IOException {
 		try {
@@ -142,26 +316,122 @@ public class URLConnections {
 		}
 	}
 
-	private static <E extends Exception> void downloadAndCopy(URLConnection connection, ThrowingSupplier<BufferedOutputStream, E> output, DownloadCopyListener copyListener) throws IOException, E {
+	private static void downloadAndTransfer(URLConnection connection, Path destination, DownloadCopyListener copyListener, Hasher... hashers) throws IOException {
+		URL url = connection.getURL();
 		long length = connection.getContentLengthLong();
-		copyListener.downloaded(connection.getURL(), 0, length);
-		try (BufferedInputStream bis = new BufferedInputStream(connection.getInputStream())) {
-			try (BufferedOutputStream bos = output.get()) {
-				byte[] buf = new byte[BUFFER_LENGTH];
-				int read = 0;
-				long readCount = 0;
-				while ((read = bis.read(buf)) != -1) {
-					bos.write(buf, 0, read);
-					readCount = readCount + read;
-					Preconditions.checkArgument(length==-1 || length>=readCount, "hmm.. readCount bigger than contentLength(more than we want to): %s > %s",readCount, length);
-					copyListener.downloaded(connection.getURL(), readCount, length);
-				}
-				bos.flush();
+		copyListener.downloaded(url, 0, length);
+		try (ReadableByteChannel source = Transfers.hashing(Channels.newChannel(connection.getInputStream()), hashers)) {
+			try (FileChannel fileChannel = FileChannel.open(destination, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				long readCount = Transfers.transferFrom(source, fileChannel, 0, (block, total) -> {
+					Preconditions.checkArgument(length==-1 || length>=total, "hmm.. readCount bigger than contentLength(more than we want to): %s > %s",total, length);
+					copyListener.downloaded(url, total, length);
+				});
 				Preconditions.checkArgument(length==-1 || length==readCount, "hmm.. readCount smaller than contentLength(partial download?): %s > %s",readCount, length);
 			}
 		}
 	}
 
+	/**
+	 * reports every read to the listener, fails if more or less than the content length was read
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private final URL url;
+		private final long length;
+		private final DownloadCopyListener copyListener;
+		private long readCount = 0;
+
+		private CountingInputStream(URLConnection connection, DownloadCopyListener copyListener) throws IOException {
+			super(null);
+			this.url = connection.getURL();
+			this.length = connection.getContentLengthLong();
+			this.copyListener = copyListener;
+			copyListener.downloaded(url, 0, length);
+			this.in = connection.getInputStream();
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = super.read();
+			if (read != -1) {
+				count(1);
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count(read);
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			if (skipped > 0) {
+				count(skipped);
+			}
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		/**
+		 * read what the consumer did not need (e.g. the zip central directory)
+		 */
+		void drain() throws IOException {
+			byte[] buffer = new byte[Transfers.BLOCK_SIZE];
+			while (read(buffer, 0, buffer.length) != -1) {
+				// skip
+			}
+			Preconditions.checkArgument(length==-1 || length==readCount, "hmm.. readCount smaller than contentLength(partial download?): %s > %s",readCount, length);
+		}
+
+		private void count(long bytes) {
+			readCount = readCount + bytes;
+			Preconditions.checkArgument(length==-1 || length>=readCount, "hmm.. readCount bigger than contentLength(more than we want to): %s > %s",readCount, length);
+			copyListener.downloaded(url, readCount, length);
+		}
+	}
+
+	/**
+	 * the first call happens after the response headers are read
+	 */
+	private static class MeasuringListener implements DownloadCopyListener {
+		private final DownloadCopyListener delegate;
+		private final long start = System.nanoTime();
+		private long timeToFirstByte = -1;
+		private long bytes = 0;
+
+		private MeasuringListener(DownloadCopyListener delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void downloaded(URL url, long bytesCopied, long contentLength) {
+			if (timeToFirstByte == -1) {
+				timeToFirstByte = System.nanoTime() - start;
+			}
+			bytes = bytesCopied;
+			delegate.downloaded(url, bytesCopied, contentLength);
+		}
+
+		@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+		private ImmutableDownloadMetric.Builder metric(URL url, Optional<Proxy> proxy) {
+			return DownloadMetric.builder()
+				.url(url)
+				.proxy(proxy.map(Proxy::toString))
+				.timeToFirstByte(timeToFirstByte)
+				.duration(System.nanoTime() - start)
+				.bytes(bytes);
+		}
+	}
+
 	@FunctionalInterface
 	public interface DownloadCopyListener {
 		/**
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import de.flapdoodle.collections.ImmutableTypedMap;
+import de.flapdoodle.collections.MutableTypedMap;
+import de.flapdoodle.collections.TypedMap;
+import de.flapdoodle.reflection.TypeInfo;
+import de.flapdoodle.types.Either;
+import de.flapdoodle.types.Maybe;
+import de.flapdoodle.types.Pair;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FunnelTest {
+
+	@Test
+	public void pairOfStringAndInt() {
+		Funnel<Pair<String, Integer>> funnel = Funnel.pair(Funnel.string(), Funnel.integer());
+
+		assertThat(hash(Pair.of("foo", 1), funnel))
+			.isEqualTo(Hasher.instance().putString("foo").putInt(1).hashAsString())
+			.isNotEqualTo(hash(Pair.of("foo", 2), funnel));
+	}
+
+	@Test
+	public void eitherAndMaybeAreTagged() {
+		Funnel<Either<String, String>> either = Funnel.either(Funnel.string(), Funnel.string());
+		Funnel<Maybe<String>> maybe = Funnel.maybe(Funnel.string());
+
+		assertThat(hash(Either.left("a"), either)).isNotEqualTo(hash(Either.right("a"), either));
+		assertThat(hash(Maybe.some(""), maybe)).isNotEqualTo(hash(Maybe.none(), maybe));
+		assertThat(hash(Maybe.some("a"), maybe)).isEqualTo(hash(Maybe.some("a"), maybe));
+	}
+
+	@Test
+	public void anyDistinguishesTypes() {
+		assertThat(hash("1", Funnel.any())).isNotEqualTo(hash(1, Funnel.any()));
+		assertThat(hash(1, Funnel.any())).isNotEqualTo(hash(1L, Funnel.any()));
+		assertThat(hash(null, Funnel.any())).isNotEqualTo(hash(Maybe.none(), Funnel.any()));
+		assertThat(hash(Pair.of("a", Either.left(Maybe.some(true))), Funnel.any()))
+			.isEqualTo(hash(Pair.of("a", Either.left(Maybe.some(true))), Funnel.any()))
+			.isNotEqualTo(hash(Pair.of("a", Either.right(Maybe.some(true))), Funnel.any()));
+		assertThat(hash(Thread.State.NEW, Funnel.any())).isNotEqualTo(hash("NEW", Funnel.any()));
+
+		assertThatThrownBy(() -> hash(new Object(), Funnel.any()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("no funnel");
+	}
+
+	@Test
+	public void typedMapDoesNotDependOnInsertionOrder() {
+		MutableTypedMap<String> first = TypedMap.mutable();
+		first.put(TypeInfo.of(String.class), "a", "A");
+		first.put(TypeInfo.of(Integer.class), "a", 1);
+		first.put(TypeInfo.of(String.class), "b", "B");
+
+		ImmutableTypedMap<String> second = TypedMap.<String>immutable()
+			.add(TypeInfo.of(String.class), "b", "B")
+			.add(TypeInfo.of(Integer.class), "a", 1)
+			.add(TypeInfo.of(String.class), "a", "A");
+
+		ImmutableTypedMap<String> other = second.add(TypeInfo.of(Integer.class), "b", 2);
+
+		Funnel<TypedMap<String>> funnel = Funnel.typedMap(Funnel.string(), Funnel.any());
+		assertThat(hash(first, funnel))
+			.isEqualTo(hash(second, funnel))
+			.isNotEqualTo(hash(other, funnel));
+	}
+
+	private static <T> String hash(T value, Funnel<? super T> funnel) {
+		return Hasher.instance().put(value, funnel).hashAsString();
+	}
+}
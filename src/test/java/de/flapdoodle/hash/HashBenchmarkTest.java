@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * rough throughput comparison of the non cryptographic hashes with sha256, run manually
+ */
+@Disabled("benchmark")
+class HashBenchmarkTest {
+	private static final Logger logger = LoggerFactory.getLogger(HashBenchmarkTest.class);
+
+	private static final int ROUNDS = 10;
+
+	@Test
+	public void shortKeys() {
+		byte[][] keys = new byte[100_000][];
+		Random random = new Random(1);
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = new byte[16 + random.nextInt(48)];
+			random.nextBytes(keys[i]);
+		}
+		compare("short keys", keys);
+	}
+
+	@Test
+	public void largeContent() {
+		byte[][] content = new byte[16][];
+		Random random = new Random(1);
+		for (int i = 0; i < content.length; i++) {
+			content[i] = new byte[1024 * 1024];
+			random.nextBytes(content[i]);
+		}
+		compare("1MB blocks", content);
+	}
+
+	/**
+	 * the first pass is a warm up for the jit
+	 */
+	private static void compare(String label, byte[][] data) {
+		for (boolean warmUp : new boolean[] { true, false }) {
+			measure(label, "sha256", warmUp, data, it -> Hasher.instance().update(it).hashAsBytes()[0]);
+			measure(label, "sha256 (thread local)", warmUp, data, it -> Hasher.withInstance(hasher -> hasher.update(it).hashAsBytes()[0]));
+			measure(label, "xxHash64", warmUp, data, XxHash64::hash);
+			measure(label, "murmur3 32", warmUp, data, Murmur3Hash32::hash);
+			measure(label, "murmur3 128", warmUp, data, it -> Murmur3Hash128.hash(it)[0]);
+		}
+	}
+
+	private static void measure(String label, String name, boolean warmUp, byte[][] data, ToLongFunction<byte[]> hash) {
+		long bytes = 0;
+		for (byte[] it : data) {
+			bytes += it.length;
+		}
+		long best = Long.MAX_VALUE;
+		long blackhole = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			long start = System.nanoTime();
+			for (byte[] it : data) {
+				blackhole += hash.applyAsLong(it);
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		if (!warmUp) {
+			logger.info("{} - {}: {} MB/s, {} ns/hash ({})", label, name, bytes * 1000 / best, best / data.length, blackhole);
+		}
+	}
+}
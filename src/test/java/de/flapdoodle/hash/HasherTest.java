@@ -18,9 +18,16 @@ package de.flapdoodle.hash;
 
 import org.junit.jupiter.api.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class HasherTest {
+	private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
 	@Test
 	public void sha256Hash() {
 		String result = Hasher.instance().update("hello").hashAsString();
@@ -32,4 +39,99 @@ class HasherTest {
 		String result = Hasher.md5Instance().update("hello").hashAsString();
 		assertThat(result).isEqualTo("5d41402abc4b2a76b9719d911017c592");
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void binaryHash() {
+		byte[] hash = Hasher.instance().update("hello").hashAsBytes();
+		assertThat(hash).hasSize(32);
+		assertThat(hash[0]).isEqualTo((byte) 0x2c);
+
+		byte[] destination = new byte[40];
+		int written = Hasher.instance().update("hello").hashInto(destination, 8);
+		assertThat(written).isEqualTo(32);
+		assertThat(Arrays.copyOfRange(destination, 8, 40)).isEqualTo(hash);
+	}
+
+	@Test
+	public void hashIntoTooSmallDestination() {
+		assertThatThrownBy(() -> Hasher.instance().update("hello").hashInto(new byte[40], 9))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+
+	@Test
+	public void base64AndBase32() {
+		assertThat(Hasher.instance().update("hello").hashAsBase64()).isEqualTo("LPJNul-wow4m6DsqxbninhsWHlwfp0JecwQzYpOLmCQ");
+		assertThat(Hasher.instance().update("hello").hashAsBase32()).isEqualTo("FTZE3OS7WCRQ4JXIHMVMLOPCTYNRMHS4D6TUEXTTAQZWFE4LTASA");
+		assertThat(Encodings.base32("f".getBytes(StandardCharsets.UTF_8))).isEqualTo("MY");
+		assertThat(Encodings.base32("foobar".getBytes(StandardCharsets.UTF_8))).isEqualTo("MZXW6YTBOI");
+		assertThat(Encodings.hex(new byte[] { 0, 15, (byte) 0xa0, (byte) 0xff })).isEqualTo("000fa0ff");
+	}
+
+	@Test
+	public void resetAndReuse() {
+		Hasher hasher = Hasher.instance();
+		hasher.update("something else").hashAsString();
+		hasher.update("foo");
+
+		assertThat(hasher.reset().update("hello").hashAsString()).isEqualTo(HELLO_SHA256);
+		assertThat(hasher.update("hello").hashAsString()).isEqualTo(HELLO_SHA256);
+	}
+
+	@Test
+	public void snapshotKeepsState() {
+		Hasher hasher = Hasher.instance().update("hel");
+		Hasher snapshot = hasher.snapshot();
+
+		assertThat(hasher.update("lo").hashAsString()).isEqualTo(HELLO_SHA256);
+		assertThat(snapshot.update("lo").hashAsString()).isEqualTo(HELLO_SHA256);
+	}
+
+	@Test
+	public void threadLocalInstance() {
+		String result = Hasher.withInstance(hasher -> hasher.update("hello").hashAsString());
+		assertThat(result).isEqualTo(HELLO_SHA256);
+
+		String nested = Hasher.withInstance(outer -> {
+			outer.update("hel");
+			String inner = Hasher.withInstance(hasher -> hasher.update("something else").hashAsString());
+			assertThat(inner).isNotEqualTo(HELLO_SHA256);
+			return outer.update("lo").hashAsString();
+		});
+		assertThat(nested).isEqualTo(HELLO_SHA256);
+
+		String md5 = Hasher.withMd5Instance(hasher -> hasher.update("hello").hashAsString());
+		assertThat(md5).isEqualTo("5d41402abc4b2a76b9719d911017c592");
+	}
+
+	@Test
+	public void typedPutMethods() {
+		String result = Hasher.instance()
+			.putInt(0x01020304)
+			.putLong(0x05060708090a0b0cL)
+			.putBoolean(true)
+			.putByte((byte) 0xff)
+			.hashAsString();
+
+		String expected = Hasher.instance()
+			.update(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 1, (byte) 0xff })
+			.hashAsString();
+
+		assertThat(result).isEqualTo(expected);
+	}
+
+	@Test
+	public void charsWithoutEncoding() {
+		String content = String.join("", Collections.nCopies(20, "aä€"));
+
+		assertThat(Hasher.instance().putChars(content).hashAsString())
+			.isEqualTo(Hasher.instance().update(content, StandardCharsets.UTF_16BE).hashAsString());
+	}
+
+	@Test
+	public void lengthPrefixedStrings() {
+		assertThat(Hasher.instance().putString("ab").putString("c").hashAsString())
+			.isNotEqualTo(Hasher.instance().putString("a").putString("bc").hashAsString());
+		assertThat(Hasher.instance().putChars("ab").putChars("c").hashAsString())
+			.isEqualTo(Hasher.instance().putChars("a").putChars("bc").hashAsString());
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class Murmur3HashTest {
+	private static final String FOX = "The quick brown fox jumps over the lazy dog";
+
+	@Test
+	public void knownHashes() {
+		assertThat(Murmur3Hash32.hash("hello")).isEqualTo(0x248bfa47);
+		assertThat(Murmur3Hash32.hash(FOX)).isEqualTo(0x2e4ff723);
+		assertThat(Murmur3Hash32.hash(new byte[0])).isEqualTo(0);
+		assertThat(Murmur3Hash128.instance().update(FOX).hashAsString()).isEqualTo("6c1b07bc7bbc4be347939ac4a93c437a");
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"0, 18c9aec4, 8fc9dec55ac502f4021c7181f686e52d",
+		"1, 5ceb4d08, 69c40ea89f0f487d9dd8740b07f49a71",
+		"3, 6976f5c8, 1879776a1a29ca7259b1450019ec311f",
+		"4, 489621b8, ab76cef7d3d150eeacd055f453fe323d",
+		"8, cf0bdb92, 6115585eced0adb1f4f8d901e11f43bb",
+		"15, bd4de03f, aea4278b6bea8b684b9eae4193655519",
+		"16, cc49f367, 6f22fd9cf8fbccbd18c3ee5c497a91fe",
+		"17, bd37e765, 6116ee9601809e770bf73ff069f5de0e",
+		"100, 31d10ece, 5994513e73829424209fffcc4b7578a9",
+		"700, a0dab71a, d38e0b8363871dd6a62f3f3366b7aa61"
+	})
+	public void seededHashOfEachLength(int length, String expected32, String expected128) {
+		byte[] data = Arrays.copyOf(HashTestData.sequence(), length);
+		assertThat(Integer.toHexString(Murmur3Hash32.instance(7).update(data).hashAsInt())).isEqualTo(expected32.replaceFirst("^0+(?=.)", ""));
+		assertThat(Murmur3Hash128.instance(7).update(data).hashAsString()).isEqualTo(expected128);
+		assertThat(Murmur3Hash128.instance(7).update(ByteBuffer.wrap(data)).hashAsString()).isEqualTo(expected128);
+		assertThat(Integer.toHexString(Murmur3Hash32.hash(data, 7))).isEqualTo(expected32.replaceFirst("^0+(?=.)", ""));
+		assertThat(Encodings.hex(Murmur3Hash128.hash(data, 7))).isEqualTo(expected128);
+		ByteBuffer direct = ByteBuffer.allocateDirect(length);
+		direct.put(data).flip();
+		assertThat(Encodings.hex(Murmur3Hash128.hash(direct))).isEqualTo(Murmur3Hash128.instance().update(data).hashAsString());
+		assertThat(Murmur3Hash32.hash(direct)).isEqualTo(Murmur3Hash32.instance().update(direct).hashAsInt());
+	}
+
+	@Test
+	public void streamingGivesSameHashAsOneShot() {
+		byte[] data = HashTestData.sequence();
+		Random random = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			Murmur3Hash32 hash32 = Murmur3Hash32.instance();
+			Murmur3Hash128 hash128 = Murmur3Hash128.instance();
+			int position = 0;
+			while (position < data.length) {
+				int count = Math.min(data.length - position, random.nextInt(40));
+				hash32.update(data, position, count);
+				hash128.update(data, position, count);
+				position += count;
+			}
+			assertThat(hash32.hashAsInt()).isEqualTo(Murmur3Hash32.hash(data));
+			assertThat(hash128.hashAsBytes()).isEqualTo(Murmur3Hash128.hash(data));
+		}
+	}
+
+	@Test
+	public void stringsAreHashedAsUtf8() {
+		String content = "äöü € 😀 unpaired \uD83D";
+		byte[] utf8 = content.getBytes(StandardCharsets.UTF_8);
+		assertThat(Murmur3Hash32.hash(content)).isEqualTo(Murmur3Hash32.hash(utf8));
+		assertThat(Murmur3Hash128.hash(content)).isEqualTo(Murmur3Hash128.hash(utf8));
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TreeHasherTest {
+
+	@Test
+	public void treeOfChunks(@TempDir Path tempDir) throws IOException {
+		byte[] content = randomBytes(10_000);
+		Path file = Files.write(tempDir.resolve("file"), content);
+
+		TreeHasher testee = TreeHasher.builder()
+			.chunkSize(1024)
+			.build();
+
+		assertThat(testee.treeHash(file)).isEqualTo(expectedTreeHash(content, 1024));
+	}
+
+	@Test
+	public void sameResultWithAnyParallelism(@TempDir Path tempDir) throws IOException {
+		Path file = Files.write(tempDir.resolve("file"), randomBytes(100_000));
+
+		ForkJoinPool singleThread = new ForkJoinPool(1);
+		try {
+			byte[] sequential = TreeHasher.builder().chunkSize(1000).pool(singleThread).build().treeHash(file);
+			byte[] parallel = TreeHasher.builder().chunkSize(1000).build().treeHash(file);
+
+			assertThat(parallel).isEqualTo(sequential);
+		}
+		finally {
+			singleThread.shutdown();
+		}
+	}
+
+	@Test
+	public void sequentialHashIsThePlainHash(@TempDir Path tempDir) throws IOException {
+		byte[] content = randomBytes(5_000);
+		Path file = Files.write(tempDir.resolve("file"), content);
+		TreeHasher testee = TreeHasher.builder()
+			.chunkSize(1024)
+			.build();
+
+		TreeHasher.FileHashes hashes = testee.hash(file);
+
+		assertThat(hashes.sequentialHash())
+			.isEqualTo(Hasher.instance().update(content).hashAsBytes())
+			.isEqualTo(testee.sequentialHash(file));
+		assertThat(hashes.treeHash()).isEqualTo(testee.treeHash(file));
+	}
+
+	@Test
+	public void emptyAndSingleChunkFiles(@TempDir Path tempDir) throws IOException {
+		Path empty = Files.write(tempDir.resolve("empty"), new byte[0]);
+		Path small = Files.write(tempDir.resolve("small"), "hello".getBytes());
+		TreeHasher testee = TreeHasher.defaults();
+
+		assertThat(testee.treeHash(empty)).isEqualTo(Hasher.instance().hashAsBytes());
+		assertThat(testee.treeHash(small)).isEqualTo(Hasher.instance().update(new byte[] { 0 }).update("hello").hashAsBytes());
+	}
+
+	@Test
+	public void missingFile(@TempDir Path tempDir) {
+		assertThatThrownBy(() -> TreeHasher.defaults().hash(tempDir.resolve("missing")))
+			.isInstanceOf(IOException.class);
+	}
+
+	private static byte[] expectedTreeHash(byte[] content, int chunkSize) {
+		int chunks = (content.length + chunkSize - 1) / chunkSize;
+		byte[][] leafs = new byte[chunks][];
+		for (int i = 0; i < chunks; i++) {
+			leafs[i] = Hasher.instance()
+				.update(new byte[] { 0 })
+				.update(Arrays.copyOfRange(content, i * chunkSize, Math.min(content.length, (i + 1) * chunkSize)))
+				.hashAsBytes();
+		}
+		return merkleTreeHash(leafs, 0, chunks);
+	}
+
+	private static byte[] merkleTreeHash(byte[][] leafs, int from, int to) {
+		if (to - from == 1) {
+			return leafs[from];
+		}
+		int k = 1;
+		while (k * 2 < to - from) {
+			k = k * 2;
+		}
+		return Hasher.instance()
+			.update(new byte[] { 1 })
+			.update(merkleTreeHash(leafs, from, from + k))
+			.update(merkleTreeHash(leafs, from + k, to))
+			.hashAsBytes();
+	}
+
+	private static byte[] randomBytes(int size) {
+		byte[] ret = new byte[size];
+		new Random(1).nextBytes(ret);
+		return ret;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.hash;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class XxHash64Test {
+
+	@Test
+	public void knownHashes() {
+		assertThat(XxHash64.hash(new byte[0])).isEqualTo(0xef46db3751d8e999L);
+		assertThat(XxHash64.hash("abc")).isEqualTo(0x44bc2cf5ad770999L);
+		assertThat(XxHash64.instance().update("abc").hashAsString()).isEqualTo("44bc2cf5ad770999");
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+		"0, 95f0626f6f0a4409",
+		"1, d90df86c76f52e13",
+		"7, 54640963b8c77fa9",
+		"8, 3072f8c5cba43e9a",
+		"31, 0bdbbcaead6c6e56",
+		"32, a5972d57c4aea230",
+		"33, 0c43e57754c778d9",
+		"100, 80653e7e9b887cdd",
+		"700, 716a30930cf25f5e"
+	})
+	public void seededHashOfEachLength(int length, String expected) {
+		byte[] data = Arrays.copyOf(HashTestData.sequence(), length);
+		assertThat(XxHash64.instance(7).update(data).hashAsString()).isEqualTo(expected);
+		assertThat(XxHash64.instance(7).update(ByteBuffer.wrap(data)).hashAsString()).isEqualTo(expected);
+		ByteBuffer direct = ByteBuffer.allocateDirect(length);
+		direct.put(data).flip();
+		assertThat(XxHash64.instance(7).update(direct).hashAsString()).isEqualTo(expected);
+		assertThat(Long.toHexString(XxHash64.hash(data, 7))).isEqualTo(expected.replaceFirst("^0+(?=.)", ""));
+	}
+
+	@Test
+	public void streamingGivesSameHashAsOneShot() {
+		byte[] data = HashTestData.sequence();
+		Random random = new Random(1);
+		for (int i = 0; i < 100; i++) {
+			XxHash64 hash = XxHash64.instance();
+			int position = 0;
+			while (position < data.length) {
+				int count = Math.min(data.length - position, random.nextInt(70));
+				hash.update(data, position, count);
+				position += count;
+			}
+			assertThat(hash.hashAsLong()).isEqualTo(XxHash64.hash(data));
+		}
+	}
+
+	@Test
+	public void stringsAreHashedAsUtf8() {
+		String content = "äöü € 😀 unpaired \uD83D and some more text to fill more than one block";
+		assertThat(XxHash64.hash(content)).isEqualTo(XxHash64.hash(content.getBytes(StandardCharsets.UTF_8)));
+		assertThat(XxHash64.hash(new StringBuilder(content))).isEqualTo(XxHash64.hash(content.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void hashCanBeComputedInBetweenAndReset() {
+		XxHash64 hash = XxHash64.instance().update("ab");
+		long ab = hash.hashAsLong();
+		hash.update("c");
+
+		assertThat(ab).isEqualTo(XxHash64.hash("ab"));
+		assertThat(hash.hashAsLong()).isEqualTo(0x44bc2cf5ad770999L);
+		assertThat(hash.reset().update("ab").hashAsLong()).isEqualTo(ab);
+	}
+
+	@Test
+	public void oneShotDoesNotChangeBufferPosition() {
+		ByteBuffer content = ByteBuffer.allocateDirect(100);
+		content.put(Arrays.copyOf(HashTestData.sequence(), 100)).flip();
+		content.position(10);
+
+		long hash = XxHash64.hash(content);
+
+		assertThat(content.position()).isEqualTo(10);
+		assertThat(hash).isEqualTo(XxHash64.hash(Arrays.copyOfRange(HashTestData.sequence(), 10, 100)));
+	}
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ArchivesTest {
+
+	@Test
+	public void typeOfFileName() {
+		assertThat(Archives.Type.typeOf("dist.tar.gz")).contains(Archives.Type.TAR_GZ);
+		assertThat(Archives.Type.typeOf("dist.TGZ")).contains(Archives.Type.TAR_GZ);
+		assertThat(Archives.Type.typeOf("dist.tar")).contains(Archives.Type.TAR);
+		assertThat(Archives.Type.typeOf("file.gz")).contains(Archives.Type.GZIP);
+		assertThat(Archives.Type.typeOf("dist.zip")).contains(Archives.Type.ZIP);
+		assertThat(Archives.Type.typeOf("file.txt")).isEmpty();
+	}
+
+	@Test
+	public void extractTarGzWhileDownloading(@TempDir Path tempDir) throws IOException {
+		String longName = "dist/" + repeat("nested/", 20) + "file.txt";
+		byte[] tar = tar(
+			entry("dist/", '5', 0755, new byte[0]),
+			entry("dist/bin/run", '0', 0755, "#!/bin/sh".getBytes(StandardCharsets.UTF_8)),
+			entry("././@LongLink", 'L', 0, (longName + "\0").getBytes(StandardCharsets.UTF_8)),
+			entry("ignored", '0', 0644, "long".getBytes(StandardCharsets.UTF_8))
+		);
+
+		Path destination = tempDir.resolve("dist");
+		List<Long> progress = new ArrayList<>();
+		download(gzip(tar), destination, Archives.Type.TAR_GZ, progress);
+
+		assertThat(destination.resolve("dist/bin/run")).hasContent("#!/bin/sh");
+		assertThat(destination.resolve(longName)).hasContent("long");
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			assertThat(Files.getPosixFilePermissions(destination.resolve("dist/bin/run"))).contains(PosixFilePermission.OWNER_EXECUTE);
+		}
+		assertThat(progress).last().isEqualTo((long) gzip(tar).length);
+		assertThat(stagingFilesIn(tempDir)).isEmpty();
+	}
+
+	@Test
+	public void extractZipWhileDownloading(@TempDir Path tempDir) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+			zip.putNextEntry(new ZipEntry("dir/"));
+			zip.putNextEntry(new ZipEntry("dir/file.txt"));
+			zip.write("zipped".getBytes(StandardCharsets.UTF_8));
+		}
+
+		Path destination = tempDir.resolve("dist");
+		List<Long> progress = new ArrayList<>();
+		download(bytes.toByteArray(), destination, Archives.Type.ZIP, progress);
+
+		assertThat(destination.resolve("dir/file.txt")).hasContent("zipped");
+		assertThat(progress).last().isEqualTo((long) bytes.size());
+	}
+
+	@Test
+	public void decompressGzipIntoFile(@TempDir Path tempDir) throws IOException {
+		Path destination = tempDir.resolve("file.txt");
+		download(gzip("content".getBytes(StandardCharsets.UTF_8)), destination, Archives.Type.GZIP, new ArrayList<>());
+
+		assertThat(destination).hasContent("content");
+	}
+
+	@Test
+	public void entriesMustNotEscapeDestination(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(entry("../escaped.txt", '0', 0644, "evil".getBytes(StandardCharsets.UTF_8)));
+
+		Path destination = tempDir.resolve("dist");
+		assertThatThrownBy(() -> download(tar, destination, Archives.Type.TAR, new ArrayList<>()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("outside of destination");
+
+		assertThat(destination).doesNotExist();
+		assertThat(tempDir.resolve("escaped.txt")).doesNotExist();
+		assertThat(stagingFilesIn(tempDir)).isEmpty();
+	}
+
+	@Test
+	public void linksMustNotEscapeDestinationOverLinksExtractedBefore(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(
+			entry("x/", '5', 0755, new byte[0]),
+			link("a/b/L", '2', "../../x"),
+			entry("a/b/L/y/", '5', 0755, new byte[0]),
+			link("a/b/L/y/M", '2', "../../.."),
+			entry("a/b/L/y/M/sub/escaped.txt", '0', 0644, "evil".getBytes(StandardCharsets.UTF_8)));
+
+		Path destination = tempDir.resolve("dist");
+		assertThatThrownBy(() -> download(tar, destination, Archives.Type.TAR, new ArrayList<>()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("outside of destination");
+
+		assertThat(destination).doesNotExist();
+		assertThat(tempDir.resolve("sub")).doesNotExist();
+		assertThat(stagingFilesIn(tempDir)).isEmpty();
+	}
+
+	@Test
+	public void linkTargetsAreResolvedOverLinksExtractedBefore(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(
+			entry("d/e/", '5', 0755, new byte[0]),
+			link("d/e/a", '2', ".."),
+			link("d/e/x", '2', "a/../../y"));
+
+		Path destination = tempDir.resolve("dist");
+		assertThatThrownBy(() -> download(tar, destination, Archives.Type.TAR, new ArrayList<>()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("outside of destination");
+
+		assertThat(destination).doesNotExist();
+	}
+
+	@Test
+	public void linkTargetsMustNotGoBackFromElementsExtractedLater(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(
+			entry("d/e/", '5', 0755, new byte[0]),
+			link("d/e/x", '2', "q/../../../y"),
+			link("d/e/q", '2', "../.."));
+
+		Path destination = tempDir.resolve("dist");
+		assertThatThrownBy(() -> download(tar, destination, Archives.Type.TAR, new ArrayList<>()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("outside of destination");
+
+		assertThat(destination).doesNotExist();
+	}
+
+	@Test
+	public void linksInsideOfDestinationAreExtracted(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(
+			entry("d/e/file.txt", '0', 0644, "content".getBytes(StandardCharsets.UTF_8)),
+			link("d/e/a", '2', ".."),
+			link("d/x", '2', "e/a/e/./file.txt"));
+
+		Path destination = tempDir.resolve("dist");
+		download(tar, destination, Archives.Type.TAR, new ArrayList<>());
+
+		assertThat(destination.resolve("d/x")).isSymbolicLink().hasContent("content");
+	}
+
+	@Test
+	public void hardLinksMustNotCopyFilesOutsideOfDestination(@TempDir Path tempDir) throws IOException {
+		Path secret = Files.write(tempDir.resolve("secret.txt"), "secret".getBytes(StandardCharsets.UTF_8));
+		byte[] tar = tar(
+			link("L", '2', ".."),
+			link("copy.txt", '1', "L/" + secret.getFileName()));
+
+		Path destination = tempDir.resolve("dist");
+		assertThatThrownBy(() -> download(tar, destination, Archives.Type.TAR, new ArrayList<>()))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("outside of destination");
+
+		assertThat(destination).doesNotExist();
+	}
+
+	@Test
+	public void unknownEntriesAreSkipped(@TempDir Path tempDir) throws IOException {
+		byte[] tar = tar(
+			entry("unknown", 'Z', 0644, repeat("x", 700).getBytes(StandardCharsets.UTF_8)),
+			entry("file.txt", '0', 0644, "content".getBytes(StandardCharsets.UTF_8)));
+
+		Path destination = tempDir.resolve("dist");
+		download(tar, destination, Archives.Type.TAR, new ArrayList<>());
+
+		assertThat(destination.resolve("unknown")).doesNotExist();
+		assertThat(destination.resolve("file.txt")).hasContent("content");
+	}
+
+	private static void download(byte[] data, Path destination, Archives.Type type, List<Long> progress) throws IOException {
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "application/octet-stream", data));
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			URLConnections.downloadAndExtract(URLConnections.urlConnectionOf(server.urlOf("archive")), destination, type,
+				(url, bytesCopied, contentLength) -> progress.add(bytesCopied));
+		}
+	}
+
+	private static List<Path> stagingFilesIn(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(it -> it.getFileName().toString().endsWith(".extracting"))
+				.collect(Collectors.toList());
+		}
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(data);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] tar(byte[]... entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (byte[] entry : entries) {
+			bytes.write(entry);
+		}
+		bytes.write(new byte[1024]);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] link(String name, char type, String linkName) {
+		return entry(name, type, 0777, linkName, new byte[0]);
+	}
+
+	private static byte[] entry(String name, char type, int mode, byte[] content) {
+		return entry(name, type, mode, "", content);
+	}
+
+	private static byte[] entry(String name, char type, int mode, String linkName, byte[] content) {
+		byte[] header = new byte[512];
+		put(header, 0, name);
+		put(header, 157, linkName);
+		put(header, 100, String.format("%07o", mode));
+		put(header, 124, String.format("%011o", content.length));
+		put(header, 136, String.format("%011o", 0));
+		header[156] = (byte) type;
+		put(header, 257, "ustar");
+		put(header, 263, "00");
+		put(header, 148, "        ");
+		long checksum = 0;
+		for (byte b : header) {
+			checksum = checksum + (b & 0xff);
+		}
+		put(header, 148, String.format("%06o", checksum));
+		header[154] = 0;
+
+		int padded = (content.length + 511) / 512 * 512;
+		byte[] entry = new byte[512 + padded];
+		System.arraycopy(header, 0, entry, 0, 512);
+		System.arraycopy(content, 0, entry, 512, content.length);
+		return entry;
+	}
+
+	private static void put(byte[] header, int offset, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(bytes, 0, header, offset, bytes.length);
+	}
+
+	private static String repeat(String value, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(value);
+		}
+		return sb.toString();
+	}
+}
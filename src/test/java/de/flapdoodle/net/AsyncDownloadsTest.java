@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import fi.iki.elonen.NanoHTTPD;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncDownloadsTest {
+
+	@Test
+	public void downloadIntoFiles(@TempDir Path tempDir) throws Exception {
+		String content=String.join("", Collections.nCopies(100, UUID.randomUUID().toString()));
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().startsWith("/file")) {
+				return Optional.of(HttpServers.response(200, "text/text", (session.getUri() + content).getBytes(StandardCharsets.UTF_8)));
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener);
+			AsyncDownloads downloads = AsyncDownloads.withThreads(4, 2)) {
+
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				futures.add(downloads.downloadIntoFile(server.urlOf("file" + i), tempDir.resolve("file" + i), (url, bytesCopied, contentLength) -> {}));
+			}
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+			for (int i = 0; i < 10; i++) {
+				assertThat(futures.get(i).get())
+					.isEqualTo(tempDir.resolve("file" + i))
+					.hasContent("/file" + i + content);
+			}
+		}
+	}
+
+	@Test
+	public void limitConcurrentDownloadsPerHost(@TempDir Path tempDir) throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().startsWith("/file")) {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(50);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				finally {
+					running.decrementAndGet();
+				}
+				return Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener);
+			AsyncDownloads downloads = AsyncDownloads.withThreads(8, 2)) {
+
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(downloads.downloadIntoTempFile(server.urlOf("file" + i), (url, bytesCopied, contentLength) -> {}));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+			for (CompletableFuture<Path> future : futures) {
+				Files.delete(future.get());
+			}
+		}
+
+		assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void downloadsWaitingForTheirHostDoNotBlockOtherHosts(@TempDir Path tempDir) throws Exception {
+		CountDownLatch otherHostRequested = new CountDownLatch(1);
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().startsWith("/other")) {
+				otherHostRequested.countDown();
+			} else {
+				try {
+					otherHostRequested.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener);
+			AsyncDownloads downloads = AsyncDownloads.withThreads(2, 1)) {
+
+			// same server, but different host names
+			URL otherHost = new URL("http://127.0.0.1:" + server.getListeningPort() + "/other");
+
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				futures.add(downloads.downloadIntoFile(server.urlOf("file" + i), tempDir.resolve("file" + i), (url, bytesCopied, contentLength) -> {}));
+			}
+			futures.add(downloads.downloadIntoFile(otherHost, tempDir.resolve("other"), (url, bytesCopied, contentLength) -> {}));
+
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+			assertThat(otherHostRequested.getCount()).isEqualTo(0);
+			assertThat(tempDir.resolve("other")).hasContent("/other");
+		}
+	}
+
+	@Test
+	public void closeCompletesRunningAndWaitingDownloads(@TempDir Path tempDir) throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+
+		HttpServers.Listener listener = session -> {
+			started.countDown();
+			try {
+				release.await(10, TimeUnit.SECONDS);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			AsyncDownloads downloads = AsyncDownloads.withThreads(1, 1);
+
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 3; i++) {
+				futures.add(downloads.downloadIntoFile(server.urlOf("file" + i), tempDir.resolve("file" + i), (url, bytesCopied, contentLength) -> {}));
+			}
+			started.await(10, TimeUnit.SECONDS);
+			downloads.close();
+
+			for (CompletableFuture<Path> future : futures) {
+				assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+					.isInstanceOf(CancellationException.class);
+			}
+			assertThat(downloads.downloadIntoTempFile(server.urlOf("after"), (url, bytesCopied, contentLength) -> {}))
+				.isCompletedExceptionally();
+			assertThat(downloads.hostsWithDownloads()).isEqualTo(0);
+		}
+		finally {
+			release.countDown();
+		}
+	}
+
+	@Test
+	public void queuesOfHostsAreRemovedIfNothingIsRunning() throws Exception {
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener);
+			AsyncDownloads downloads = AsyncDownloads.withThreads(2, 1)) {
+
+			List<CompletableFuture<Path>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(downloads.downloadIntoTempFile(server.urlOf("file" + i), (url, bytesCopied, contentLength) -> {}));
+			}
+			futures.add(downloads.downloadIntoTempFile(new URL("http://127.0.0.1:" + server.getListeningPort() + "/other"), (url, bytesCopied, contentLength) -> {}));
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+			for (CompletableFuture<Path> future : futures) {
+				Files.delete(future.get());
+			}
+			// the slot is given back after the result is completed
+			long until = System.currentTimeMillis() + 5000;
+			while (downloads.hostsWithDownloads() > 0 && System.currentTimeMillis() < until) {
+				Thread.sleep(10);
+			}
+			assertThat(downloads.hostsWithDownloads()).isEqualTo(0);
+		}
+	}
+
+	@Test
+	public void cancelledDownloadMustNotLeaveFiles(@TempDir Path tempDir) throws Exception {
+		CountDownLatch firstBlockSent = new CountDownLatch(1);
+		CountDownLatch cancelled = new CountDownLatch(1);
+		byte[] block = new byte[Transfers.BLOCK_SIZE];
+
+		InputStream slowContent = new InputStream() {
+			int blocks = 0;
+			int position = 0;
+
+			@Override
+			public int read() throws IOException {
+				if (position == block.length) {
+					blocks++;
+					position = 0;
+					firstBlockSent.countDown();
+					try {
+						cancelled.await(10, TimeUnit.SECONDS);
+					}
+					catch (InterruptedException e) {
+						throw new IOException(e);
+					}
+				}
+				if (blocks > 10) return -1;
+				return block[position++];
+			}
+		};
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/slow")) {
+				return Optional.of(NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.OK, "text/text", slowContent));
+			}
+			return Optional.empty();
+		};
+
+		Path destination = tempDir.resolve("slow");
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener);
+			AsyncDownloads downloads = AsyncDownloads.withThreads(1, 1)) {
+
+			CompletableFuture<Path> future = downloads.downloadIntoFile(server.urlOf("slow"), destination, (url, bytesCopied, contentLength) -> {});
+			assertThat(firstBlockSent.await(10, TimeUnit.SECONDS)).isTrue();
+			future.cancel(true);
+			cancelled.countDown();
+
+			assertThatThrownBy(future::get).isInstanceOf(CancellationException.class);
+
+			// the next download can only start if the cancelled one has finished
+			downloads.downloadIntoTempFile(server.urlOf("missing"), (url, bytesCopied, contentLength) -> {})
+				.handle((path, ex) -> path)
+				.get(10, TimeUnit.SECONDS);
+		}
+
+		assertThat(destination).doesNotExist();
+	}
+
+	@Test
+	public void virtualThreadsAreOptional() {
+		try (AsyncDownloads downloads = AsyncDownloads.withVirtualThreads(2)) {
+			assertThat(downloads).isNotNull();
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import de.flapdoodle.types.Either;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchDownloadsTest {
+
+	@Test
+	public void jobsAreStartedByPriorityAndSize(@TempDir Path tempDir) throws IOException, InterruptedException {
+		List<String> requests = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().startsWith("/file")) {
+				requests.add(session.getUri());
+				return Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			List<BatchDownloads.Job> jobs = Arrays.asList(
+				BatchDownloads.Job.of(server.urlOf("fileA"), tempDir.resolve("a")),
+				BatchDownloads.Job.of(server.urlOf("fileB"), tempDir.resolve("b")).withPriority(1),
+				BatchDownloads.Job.of(server.urlOf("fileC"), tempDir.resolve("c")).withExpectedSize(10L),
+				BatchDownloads.Job.of(server.urlOf("fileD"), tempDir.resolve("d")).withPriority(1).withExpectedSize(100L)
+			);
+
+			Map<BatchDownloads.Job, Either<Path, Exception>> result = BatchDownloads.of(1, 1)
+				.downloadAll(jobs, (bytesCopied, contentLength, finishedJobs, jobCount, bytesPerSecond) -> {});
+
+			assertThat(result.values()).allMatch(Either::isLeft);
+			assertThat(tempDir.resolve("d")).hasContent("/fileD");
+		}
+
+		assertThat(requests).containsExactly("/fileD", "/fileB", "/fileC", "/fileA");
+	}
+
+	@Test
+	public void failedJobsDoNotStopOthers(@TempDir Path tempDir) throws IOException, InterruptedException {
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().startsWith("/file")) {
+				return Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+			}
+			return Optional.empty();
+		};
+
+		List<Integer> finished = new CopyOnWriteArrayList<>();
+		List<Long> copied = new CopyOnWriteArrayList<>();
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			// same server, but different host names
+			URL otherHost = new URL("http://127.0.0.1:" + server.getListeningPort() + "/fileB");
+
+			List<BatchDownloads.Job> jobs = Arrays.asList(
+				BatchDownloads.Job.of(server.urlOf("fileA"), tempDir.resolve("a")),
+				BatchDownloads.Job.of(otherHost, tempDir.resolve("b")),
+				BatchDownloads.Job.of(server.urlOf("missing"), tempDir.resolve("c"))
+			);
+
+			Map<BatchDownloads.Job, Either<Path, Exception>> result = BatchDownloads.of(4, 1)
+				.downloadAll(jobs, (bytesCopied, contentLength, finishedJobs, jobCount, bytesPerSecond) -> {
+					finished.add(finishedJobs);
+					copied.add(bytesCopied);
+					assertThat(jobCount).isEqualTo(3);
+				});
+
+			assertThat(result.get(jobs.get(0)).left()).isEqualTo(tempDir.resolve("a"));
+			assertThat(result.get(jobs.get(1)).left()).isEqualTo(tempDir.resolve("b"));
+			assertThat(result.get(jobs.get(2)).isLeft()).isFalse();
+			assertThat(result.get(jobs.get(2)).right()).isInstanceOf(IOException.class);
+		}
+
+		assertThat(tempDir.resolve("a")).hasContent("/fileA");
+		assertThat(tempDir.resolve("b")).hasContent("/fileB");
+		assertThat(finished).isSorted().last().isEqualTo(3);
+		assertThat(copied).isSorted().last().isEqualTo((long) "/fileA/fileB".length());
+	}
+
+	@Test
+	public void failingListenerDoesNotBlockCompletion(@TempDir Path tempDir) throws IOException, InterruptedException {
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", session.getUri().getBytes(StandardCharsets.UTF_8)));
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			List<BatchDownloads.Job> jobs = Arrays.asList(
+				BatchDownloads.Job.of(server.urlOf("fileA"), tempDir.resolve("a")),
+				BatchDownloads.Job.of(server.urlOf("fileB"), tempDir.resolve("b"))
+			);
+
+			Map<BatchDownloads.Job, Either<Path, Exception>> result = BatchDownloads.of(1, 1)
+				.downloadAll(jobs, (bytesCopied, contentLength, finishedJobs, jobCount, bytesPerSecond) -> {
+					throw new AssertionError("listener failed");
+				});
+
+			assertThat(result).hasSize(2);
+			assertThat(result.get(jobs.get(0)).right()).hasRootCauseMessage("listener failed");
+			assertThat(result.get(jobs.get(1)).right()).hasRootCauseMessage("listener failed");
+		}
+	}
+}
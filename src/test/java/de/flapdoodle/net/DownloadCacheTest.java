@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DownloadCacheTest {
+
+	@Test
+	public void secondDownloadIsServedFromCacheIfNotModified(@TempDir Path tempDir) throws IOException {
+		String content = String.join("", Collections.nCopies(100, UUID.randomUUID().toString()));
+		AtomicInteger fullDownloads = new AtomicInteger();
+		List<String> ifNoneMatch = new CopyOnWriteArrayList<>();
+		List<Long> progress = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				String etag = session.getHeaders().get("if-none-match");
+				if (etag != null) {
+					ifNoneMatch.add(etag);
+					if (etag.equals("\"v1\"")) {
+						return Optional.of(HttpServers.response(304, "text/text", new byte[0]));
+					}
+				}
+				fullDownloads.incrementAndGet();
+				NanoHTTPD.Response response = HttpServers.response(200, "text/text", content.getBytes(StandardCharsets.UTF_8));
+				response.addHeader("ETag", "\"v1\"");
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		DownloadCache cache = DownloadCache.of(tempDir.resolve("cache"), 1024 * 1024);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("second"), (url, bytesCopied, contentLength) -> progress.add(bytesCopied));
+		}
+
+		long size = content.getBytes(StandardCharsets.UTF_8).length;
+		assertThat(tempDir.resolve("first")).hasContent(content);
+		assertThat(tempDir.resolve("second")).hasContent(content);
+		assertThat(fullDownloads.get()).isEqualTo(1);
+		assertThat(ifNoneMatch).containsExactly("\"v1\"");
+		assertThat(progress).containsExactly(0L, size);
+	}
+
+	@Test
+	public void leastRecentlyUsedContentIsEvicted(@TempDir Path tempDir) throws IOException {
+		byte[] first = String.join("", Collections.nCopies(100, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+		byte[] second = String.join("", Collections.nCopies(100, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/first")) {
+				return Optional.of(HttpServers.response(200, "text/text", first));
+			}
+			if (session.getUri().equals("/second")) {
+				return Optional.of(HttpServers.response(200, "text/text", second));
+			}
+			return Optional.empty();
+		};
+
+		Path cacheDir = tempDir.resolve("cache");
+		DownloadCache cache = DownloadCache.of(cacheDir, first.length + second.length / 2);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("first"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+			cache.downloadIntoFile(server.urlOf("second"), tempDir.resolve("second"), (url, bytesCopied, contentLength) -> {});
+		}
+
+		assertThat(tempDir.resolve("first")).hasBinaryContent(first);
+		assertThat(tempDir.resolve("second")).hasBinaryContent(second);
+
+		try (Stream<Path> blobs = Files.list(cacheDir.resolve("blobs"))) {
+			assertThat(blobs)
+				.singleElement()
+				.satisfies(blob -> assertThat(blob).hasBinaryContent(second));
+		}
+	}
+
+	@Test
+	public void modifiedContentIsDownloadedAgain(@TempDir Path tempDir) throws IOException {
+		AtomicInteger version = new AtomicInteger(1);
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				String etag = "\"v" + version.get() + "\"";
+				if (etag.equals(session.getHeaders().get("if-none-match"))) {
+					return Optional.of(HttpServers.response(304, "text/text", new byte[0]));
+				}
+				NanoHTTPD.Response response = HttpServers.response(200, "text/text", etag.getBytes(StandardCharsets.UTF_8));
+				response.addHeader("ETag", etag);
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		DownloadCache cache = DownloadCache.of(tempDir.resolve("cache"), 1024 * 1024);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+			version.set(2);
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("second"), (url, bytesCopied, contentLength) -> {});
+		}
+
+		assertThat(tempDir.resolve("first")).hasContent("\"v1\"");
+		assertThat(tempDir.resolve("second")).hasContent("\"v2\"");
+	}
+
+	@Test
+	public void recentlyUsedContentIsKept(@TempDir Path tempDir) throws IOException {
+		byte[] first = String.join("", Collections.nCopies(100, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+		byte[] second = String.join("", Collections.nCopies(100, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+		byte[] third = String.join("", Collections.nCopies(100, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+		Map<String, byte[]> contentByUri = new HashMap<>();
+		contentByUri.put("/first", first);
+		contentByUri.put("/second", second);
+		contentByUri.put("/third", third);
+
+		HttpServers.Listener listener = session -> Optional.ofNullable(contentByUri.get(session.getUri()))
+			.map(content -> {
+				NanoHTTPD.Response response = HttpServers.response(200, "text/text", content);
+				response.addHeader("ETag", "\"" + session.getUri() + "\"");
+				return response;
+			});
+
+		Path cacheDir = tempDir.resolve("cache");
+		DownloadCache cache = DownloadCache.of(cacheDir, first.length + second.length + third.length / 2);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("first"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+			cache.downloadIntoFile(server.urlOf("second"), tempDir.resolve("second"), (url, bytesCopied, contentLength) -> {});
+			sleepForTimestampResolution();
+			cache.downloadIntoFile(server.urlOf("first"), tempDir.resolve("first-again"), (url, bytesCopied, contentLength) -> {});
+			sleepForTimestampResolution();
+			cache.downloadIntoFile(server.urlOf("third"), tempDir.resolve("third"), (url, bytesCopied, contentLength) -> {});
+		}
+
+		try (Stream<Path> blobs = Files.list(cacheDir.resolve("blobs"))) {
+			assertThat(blobs)
+				.hasSize(2)
+				.noneMatch(blob -> contentEquals(blob, second));
+		}
+	}
+
+	@Test
+	public void modifiedCopyDoesNotChangeTheCache(@TempDir Path tempDir) throws IOException {
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+
+		Path cacheDir = tempDir.resolve("cache");
+		DownloadCache cache = DownloadCache.of(cacheDir, 1024 * 1024);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+		}
+		Files.write(tempDir.resolve("first"), "changed".getBytes(StandardCharsets.UTF_8));
+
+		try (Stream<Path> blobs = Files.list(cacheDir.resolve("blobs"))) {
+			assertThat(blobs)
+				.singleElement()
+				.satisfies(blob -> assertThat(blob).hasContent("content"));
+		}
+	}
+
+	@Test
+	public void hardLinksShareContentWithTheCache(@TempDir Path tempDir) throws IOException {
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+
+		Path cacheDir = tempDir.resolve("cache");
+		DownloadCache cache = DownloadCache.of(cacheDir, 1024 * 1024).withHardLinks();
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+		}
+
+		assertThat(tempDir.resolve("first")).hasContent("content");
+		try (Stream<Path> blobs = Files.list(cacheDir.resolve("blobs"))) {
+			assertThat(Files.isSameFile(blobs.findFirst().get(), tempDir.resolve("first"))).isTrue();
+		}
+	}
+
+	@Test
+	public void copyIfHardLinkIsNotPossible(@TempDir Path tempDir) throws IOException {
+		Path otherFileSystem = Paths.get("/dev/shm");
+		assumeTrue(Files.isDirectory(otherFileSystem) && !Files.getFileStore(otherFileSystem).equals(Files.getFileStore(tempDir)),
+			"needs a second file system");
+
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+
+		Path cacheDir = Files.createTempDirectory(otherFileSystem, "cache");
+		try {
+			DownloadCache cache = DownloadCache.of(cacheDir, 1024 * 1024).withHardLinks();
+
+			try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+				cache.downloadIntoFile(server.urlOf("download"), tempDir.resolve("first"), (url, bytesCopied, contentLength) -> {});
+			}
+
+			assertThat(tempDir.resolve("first")).hasContent("content");
+			try (Stream<Path> blobs = Files.list(cacheDir.resolve("blobs"))) {
+				assertThat(Files.isSameFile(blobs.findFirst().get(), tempDir.resolve("first"))).isFalse();
+			}
+		}
+		finally {
+			Archives.deleteAll(cacheDir);
+		}
+	}
+
+	private static boolean contentEquals(Path file, byte[] content) {
+		try {
+			return Arrays.equals(Files.readAllBytes(file), content);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static void sleepForTimestampResolution() {
+		try {
+			Thread.sleep(20);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
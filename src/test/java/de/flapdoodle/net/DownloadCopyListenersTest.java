@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownloadCopyListenersTest {
+
+	@Test
+	public void everyPercentStep() throws MalformedURLException {
+		URL url = new URL("http://localhost/test");
+		List<Long> calls = new ArrayList<>();
+
+		URLConnections.DownloadCopyListener testee = DownloadCopyListeners.everyPercent(25, (u, bytesCopied, contentLength) -> calls.add(bytesCopied));
+
+		for (long i = 0; i <= 1000; i = i + 10) {
+			testee.downloaded(url, i, 1000);
+		}
+
+		assertThat(calls).containsExactly(0L, 250L, 500L, 750L, 1000L);
+	}
+
+	@Test
+	public void everyPercentForwardsAllCallsIfContentLengthIsUnknown() throws MalformedURLException {
+		URL url = new URL("http://localhost/test");
+		List<Long> calls = new ArrayList<>();
+
+		URLConnections.DownloadCopyListener testee = DownloadCopyListeners.everyPercent(25, (u, bytesCopied, contentLength) -> calls.add(bytesCopied));
+
+		testee.downloaded(url, 0, -1);
+		testee.downloaded(url, 10, -1);
+		testee.downloaded(url, 20, -1);
+
+		assertThat(calls).containsExactly(0L, 10L, 20L);
+	}
+
+	@Test
+	public void everyIntervalKeepsFirstAndLast() throws MalformedURLException {
+		URL url = new URL("http://localhost/test");
+		List<Long> calls = new ArrayList<>();
+
+		URLConnections.DownloadCopyListener testee = DownloadCopyListeners.everyInterval(1, TimeUnit.HOURS, (u, bytesCopied, contentLength) -> calls.add(bytesCopied));
+
+		for (long i = 0; i <= 1000; i = i + 10) {
+			testee.downloaded(url, i, 1000);
+		}
+
+		assertThat(calls).containsExactly(0L, 1000L);
+	}
+
+	@Test
+	public void throttledListenerTakesBlocksFromBucket() throws MalformedURLException {
+		URL url = new URL("http://localhost/test");
+		List<Long> calls = new ArrayList<>();
+		TokenBucket bucket = TokenBucket.of(1000, 1000);
+
+		URLConnections.DownloadCopyListener testee = DownloadCopyListeners.throttled(bucket, (u, bytesCopied, contentLength) -> calls.add(bytesCopied));
+
+		testee.downloaded(url, 0, 1000);
+		testee.downloaded(url, 600, 1000);
+		testee.downloaded(url, 1000, 1000);
+
+		assertThat(calls).containsExactly(0L, 600L, 1000L);
+		// all tokens are taken
+		assertThat(bucket.reserve(500, System.nanoTime())).isGreaterThan(0L);
+	}
+
+	@Test
+	public void throttledListenerDoesNotCountResumedBytes() throws MalformedURLException {
+		URL url = new URL("http://localhost/test");
+		TokenBucket bucket = TokenBucket.of(1000, 1000);
+
+		URLConnections.DownloadCopyListener testee = DownloadCopyListeners.throttled(bucket, (u, bytesCopied, contentLength) -> {});
+
+		testee.downloaded(url, 5000, 6000);
+		testee.downloaded(url, 5500, 6000);
+
+		// only the transferred block was taken
+		assertThat(bucket.reserve(500, System.nanoTime())).isEqualTo(0L);
+	}
+}
@@ -50,6 +50,38 @@ class EnvProxySelectorTest {
 			.isEmpty();
 	}
 
+	@Test
+	public void noProxyForIpRanges() throws MalformedURLException {
+		ProxySelector testee = EnvProxySelector.with(mapOf(
+			entry("http_proxy", "http://proxy.net:1234"),
+			entry("no_proxy", "10.0.0.0/8,*.local")
+		));
+
+		assertThat(testee.select(new URL("http://10.20.30.40/foo"))).isEmpty();
+		assertThat(testee.select(new URL("http://server.local/foo"))).isEmpty();
+		assertThat(testee.select(new URL("http://11.20.30.40/foo"))).contains(ProxyFactory.of("proxy.net",1234));
+		// cached decision
+		assertThat(testee.select(new URL("http://10.20.30.40/bar"))).isEmpty();
+	}
+
+	@Test
+	public void noProxyForPortsAndDomains() throws MalformedURLException {
+		ProxySelector testee = EnvProxySelector.with(mapOf(
+			entry("https_proxy", "http://proxy.net:2345"),
+			entry("no_proxy", "registry:5000,.corp.example")
+		));
+
+		assertThat(testee.select(new URL("https://registry:5000/v2"))).isEmpty();
+		assertThat(testee.select(new URL("https://registry/v2"))).isPresent();
+		assertThat(testee.select(new URL("https://git.corp.example/repo"))).isEmpty();
+		assertThat(testee.select(new URL("https://corp.example/"))).isEmpty();
+	}
+
+	@Test
+	public void envVariableProxySelectorIsCreatedOnce() {
+		assertThat(ProxySelector.envVariableProxySelector()).isSameAs(ProxySelector.envVariableProxySelector());
+	}
+
 	@SafeVarargs
 	private static Map<String, String> mapOf(Pair<String, String> ... entries) {
 		LinkedHashMap<String, String> ret = new LinkedHashMap<>();
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FailoverProxySelectorTest {
+	private static final ProxyFactory PROXY_A = ProxyFactory.of("proxy-a", 8080);
+	private static final ProxyFactory PROXY_B = ProxyFactory.of("proxy-b", 8080);
+
+	@Test
+	public void skipProxyAfterConsecutiveFailures() throws IOException {
+		AtomicLong now = new AtomicLong();
+		FailoverProxySelector testee = new FailoverProxySelector(url -> Arrays.asList(Optional.of(PROXY_A), Optional.of(PROXY_B), Optional.empty()),
+			2, TimeUnit.SECONDS.toNanos(10), TimeUnit.SECONDS.toNanos(30), now::get);
+		URL url = new URL("https://example.com");
+
+		assertThat(testee.select(url)).contains(PROXY_A);
+
+		testee.reportFailure(PROXY_A, new ConnectException("refused"));
+		assertThat(testee.select(url)).contains(PROXY_A);
+		testee.reportFailure(PROXY_A, new ConnectException("refused"));
+		assertThat(testee.candidates(url)).containsExactly(Optional.of(PROXY_B), Optional.empty(), Optional.of(PROXY_A));
+
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+		assertThat(testee.select(url)).contains(PROXY_A);
+
+		// trial failed, pause is doubled
+		testee.reportFailure(PROXY_A, new ConnectException("refused"));
+		now.addAndGet(TimeUnit.SECONDS.toNanos(19));
+		assertThat(testee.select(url)).contains(PROXY_B);
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertThat(testee.select(url)).contains(PROXY_A);
+
+		testee.reportSuccess(PROXY_A, Duration.ofMillis(100));
+		FailoverProxySelector.ProxyHealth health = testee.health().get(PROXY_A);
+		assertThat(health.available()).isTrue();
+		assertThat(health.failures()).isEqualTo(3);
+		assertThat(health.successes()).isEqualTo(1);
+		assertThat(health.consecutiveFailures()).isEqualTo(0);
+		assertThat(health.latency()).contains(Duration.ofMillis(100));
+	}
+
+	@Test
+	public void useFirstCandidateIfAllAreSkipped() throws IOException {
+		FailoverProxySelector testee = FailoverProxySelector.of(RuleChainProxySelector.builder()
+				.rule("*", PROXY_A, PROXY_B)
+				.build())
+			.withFailureThreshold(1);
+		URL url = new URL("https://example.com");
+
+		testee.reportFailure(PROXY_A, new ConnectException("refused"));
+		testee.reportFailure(PROXY_B, new ConnectException("refused"));
+
+		assertThat(testee.select(url)).contains(PROXY_A);
+	}
+
+	@Test
+	public void connectFailures() {
+		assertThat(FailoverProxySelector.isConnectFailure(new ConnectException("refused"), true)).isTrue();
+		assertThat(FailoverProxySelector.isConnectFailure(new SocketTimeoutException("connect timed out"), true)).isTrue();
+		assertThat(FailoverProxySelector.isConnectFailure(new SocketTimeoutException("Read timed out"), true)).isFalse();
+		assertThat(FailoverProxySelector.isConnectFailure(new UnknownHostException("proxy-a"), true)).isTrue();
+		assertThat(FailoverProxySelector.isConnectFailure(new UnknownHostException("example.com"), false)).isFalse();
+		assertThat(FailoverProxySelector.isConnectFailure(new IOException("broken"), true)).isFalse();
+	}
+
+	@Test
+	public void httpConnectionsFailoverToDirectConnection() throws IOException {
+		List<Optional<Proxy>> proxies = new ArrayList<>();
+		FailoverProxySelector selector = FailoverProxySelector.of(url -> Optional.of(PROXY_A));
+
+		HttpConnections connections = HttpConnections.builder()
+			.proxySelector(selector)
+			.backend((url, proxy) -> {
+				proxies.add(proxy);
+				if (!proxy.equals(Optional.of(Proxy.NO_PROXY))) {
+					throw new ConnectException("proxy is down");
+				}
+				return HttpConnections.Backend.urlConnection().open(url, proxy);
+			})
+			.build();
+
+		HttpServers.Listener listener = session -> Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			for (int i = 0; i < 5; i++) {
+				byte[] content = connections.use(server.urlOf("file"), URLConnections::downloadIntoByteArray);
+				assertThat(content).isEqualTo("content".getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		// proxy is skipped after 3 failures
+		assertThat(proxies).allMatch(Optional::isPresent);
+		assertThat(proxies.stream().filter(it -> it.get() != Proxy.NO_PROXY).count()).isEqualTo(3);
+		assertThat(proxies.stream().filter(it -> it.get() == Proxy.NO_PROXY).count()).isEqualTo(5);
+		assertThat(selector.health().get(PROXY_A).available()).isFalse();
+	}
+}
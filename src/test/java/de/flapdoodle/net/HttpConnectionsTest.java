@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpConnectionsTest {
+
+	@Test
+	public void applyTimeoutsAndKeepAlive() throws IOException {
+		HttpConnections connections = HttpConnections.builder()
+			.connectTimeoutMillis(1234)
+			.readTimeoutMillis(5678)
+			.keepAlive(false)
+			.build();
+
+		URLConnection connection = connections.open(new URL("http://localhost:1/file"));
+
+		assertThat(connection.getConnectTimeout()).isEqualTo(1234);
+		assertThat(connection.getReadTimeout()).isEqualTo(5678);
+		assertThat(connection.getRequestProperty("Connection")).isEqualTo("close");
+	}
+
+	@Test
+	public void proxyIsSelectedOncePerConnectionAndPassedToBackend() throws IOException {
+		List<Optional<Proxy>> proxies = new ArrayList<>();
+		AtomicInteger selected = new AtomicInteger();
+
+		HttpConnections connections = HttpConnections.builder()
+			.proxySelector(url -> {
+				selected.incrementAndGet();
+				return url.getHost().equals("behind.proxy")
+					? Optional.of(ImmutableHostnamePortProxyFactory.of("proxy", 8080))
+					: Optional.empty();
+			})
+			.backend((url, proxy) -> {
+				proxies.add(proxy);
+				return HttpConnections.Backend.urlConnection().open(url, proxy);
+			})
+			.build();
+
+		connections.open(new URL("http://behind.proxy/file"));
+		connections.open(new URL("http://direct/file"));
+
+		assertThat(selected.get()).isEqualTo(2);
+		assertThat(proxies).hasSize(2);
+		assertThat(proxies.get(0)).isPresent();
+		assertThat(proxies.get(1)).isEmpty();
+	}
+
+	@Test
+	public void limitConnectionsPerHost() throws Exception {
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		HttpServers.Listener listener = session -> {
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			try {
+				Thread.sleep(50);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			running.decrementAndGet();
+			return Optional.of(HttpServers.response(200, "text/text", "content".getBytes(StandardCharsets.UTF_8)));
+		};
+
+		HttpConnections connections = HttpConnections.builder()
+			.maxConnectionsPerHost(2)
+			.build();
+
+		ExecutorService executor = Executors.newFixedThreadPool(6);
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			List<Future<byte[]>> results = new ArrayList<>();
+			for (int i = 0; i < 6; i++) {
+				results.add(executor.submit(() -> connections.use(server.urlOf("file"), URLConnections::downloadIntoByteArray)));
+			}
+			for (Future<byte[]> result : results) {
+				assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("content".getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+	}
+
+	@Test
+	public void connectionIsNotOpenedAfterFailedAction() throws IOException {
+		AtomicInteger requests = new AtomicInteger();
+		List<Boolean> disconnected = new ArrayList<>();
+
+		HttpConnections connections = HttpConnections.builder()
+			.backend((url, proxy) -> new HttpURLConnection(url) {
+				@Override
+				public void disconnect() {
+					disconnected.add(true);
+				}
+
+				@Override
+				public boolean usingProxy() {
+					return false;
+				}
+
+				@Override
+				public void connect() throws IOException {
+					requests.incrementAndGet();
+				}
+			})
+			.build();
+
+		assertThatThrownBy(() -> connections.use(new URL("http://localhost:1/file"), connection -> {
+			throw new ConnectException("refused");
+		})).isInstanceOf(ConnectException.class);
+
+		assertThat(requests.get()).isEqualTo(0);
+		assertThat(disconnected).containsExactly(true);
+	}
+}
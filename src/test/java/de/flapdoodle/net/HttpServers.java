@@ -48,6 +48,39 @@ public class HttpServers {
 		return NanoHTTPD.newChunkedResponse(NanoHTTPD.Response.Status.lookup(status), mimeType, new ByteArrayInputStream(data));
 	}
 
+	public static NanoHTTPD.Response headResponse(String mimeType, byte[] data) {
+		// NanoHTTPD would send the body even for HEAD requests
+		return response(200, mimeType, new byte[0], data.length);
+	}
+
+	public static NanoHTTPD.Response rangeResponse(NanoHTTPD.IHTTPSession session, String mimeType, byte[] data) {
+		if (session.getMethod() == NanoHTTPD.Method.HEAD) {
+			NanoHTTPD.Response ret = headResponse(mimeType, data);
+			ret.addHeader("Accept-Ranges", "bytes");
+			return ret;
+		}
+		String range = session.getHeaders().get("range");
+		if (range != null) {
+			Matcher matcher = RANGE_PATTERN.matcher(range);
+			if (matcher.matches()) {
+				int start = Integer.parseInt(matcher.group("start"));
+				int end = matcher.group("end").isEmpty()
+					? data.length - 1
+					: Math.min(Integer.parseInt(matcher.group("end")), data.length - 1);
+				byte[] part = Arrays.copyOfRange(data, start, end + 1);
+				NanoHTTPD.Response ret = response(206, mimeType, part);
+				ret.addHeader("Content-Range", "bytes " + start + "-" + end + "/" + data.length);
+				ret.addHeader("Accept-Ranges", "bytes");
+				return ret;
+			}
+		}
+		NanoHTTPD.Response ret = response(200, mimeType, data);
+		ret.addHeader("Accept-Ranges", "bytes");
+		return ret;
+	}
+
+	private static final Pattern RANGE_PATTERN = Pattern.compile("bytes=(?<start>\\d+)-(?<end>\\d*)");
+
 	public static NanoHTTPD.Response rawResponse(byte[] data) {
 		return response(200, "text/text", data);
 	}
@@ -164,6 +197,11 @@ public class HttpServers {
 
 			@SuppressWarnings("unchecked")
 			void response(int statusCode, String statusCodeLabel, Pair<String, String> ... headers);
+
+			@SuppressWarnings("unchecked")
+			default void response(int statusCode, String statusCodeLabel, String headerName, String headerValue) {
+				response(statusCode, statusCodeLabel, Pair.of(headerName, headerValue));
+			}
 		}
 
 		static class ServerThread extends Thread {
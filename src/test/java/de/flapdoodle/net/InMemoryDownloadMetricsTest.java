@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class InMemoryDownloadMetricsTest {
+
+	@Test
+	public void histogramPercentilesAreUpperBoundsOfPowerOfTwoBuckets() {
+		Histogram histogram = new Histogram();
+		for (long i = 1; i <= 100; i++) {
+			histogram.record(i);
+		}
+
+		assertThat(histogram.count()).isEqualTo(100);
+		assertThat(histogram.mean()).isEqualTo(50);
+		assertThat(histogram.max()).isEqualTo(100);
+		assertThat(histogram.percentile(50)).isEqualTo(63);
+		assertThat(histogram.percentile(10)).isEqualTo(15);
+		assertThat(histogram.percentile(99)).isEqualTo(100);
+		assertThat(new Histogram().percentile(50)).isEqualTo(0);
+	}
+
+	@Test
+	public void aggregateByHostAndProxy() throws Exception {
+		InMemoryDownloadMetrics metrics = DownloadMetrics.inMemory();
+
+		metrics.record(metric("http://a.example/file", Optional.empty(), 10, 1000, Optional.empty()));
+		metrics.record(metric("http://a.example/other", Optional.of("HTTP @ proxy:8080"), 20, 3000, Optional.empty()));
+		metrics.record(metric("http://b.example/file", Optional.of("HTTP @ proxy:8080"), 30, 0, Optional.of("java.net.ConnectException: refused")));
+
+		assertThat(metrics.getDownloads()).isEqualTo(3);
+		assertThat(metrics.getFailures()).isEqualTo(1);
+		assertThat(metrics.getBytes()).isEqualTo(4000);
+		assertThat(metrics.getFailureReasons()).containsOnly(entry("java.net.ConnectException", 1L));
+		assertThat(metrics.getDurationP50MillisByHost()).containsOnlyKeys("a.example", "b.example");
+		assertThat(metrics.getDurationP50MillisByProxy()).containsOnlyKeys("DIRECT", "HTTP @ proxy:8080");
+
+		assertThat(metrics.dump())
+			.contains("downloads: 3 (failed: 1, retries: 0, bytes: 4000)")
+			.contains("a.example: 2 downloads, 0 failed")
+			.contains("    size (bytes): p50=")
+			.contains("1x java.net.ConnectException\n");
+	}
+
+	@Test
+	public void registerAsMBean() throws Exception {
+		InMemoryDownloadMetrics metrics = DownloadMetrics.inMemory();
+		metrics.record(metric("http://a.example/file", Optional.empty(), 10, 1000, Optional.empty()));
+
+		ObjectName name = metrics.registerMBean("test");
+		try {
+			assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Downloads")).isEqualTo(1L);
+		}
+		finally {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+		}
+	}
+
+	@Test
+	public void recordSuccessfulAndFailedDownloads(@TempDir Path tempDir) throws IOException {
+		byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/file")) {
+				return Optional.of(HttpServers.response(200, "text/text", content));
+			}
+			return Optional.empty();
+		};
+
+		InMemoryDownloadMetrics metrics = DownloadMetrics.inMemory();
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			Path destination = tempDir.resolve("file");
+			URLConnections.downloadIntoFile(server.urlOf("file"), destination, (url, bytesCopied, contentLength) -> {}, metrics);
+			assertThat(Files.readAllBytes(destination)).isEqualTo(content);
+
+			assertThatThrownBy(() -> URLConnections.downloadIntoFile(server.urlOf("missing"), tempDir.resolve("missing"), (url, bytesCopied, contentLength) -> {}, metrics))
+				.isInstanceOf(IOException.class);
+		}
+
+		assertThat(metrics.getDownloads()).isEqualTo(2);
+		assertThat(metrics.getFailures()).isEqualTo(1);
+		assertThat(metrics.getBytes()).isEqualTo(content.length);
+		assertThat(metrics.getFailureReasons()).hasSize(1);
+		assertThat(metrics.getDurationP50MillisByProxy()).containsOnlyKeys("DIRECT");
+	}
+
+	@Test
+	public void failureReasonsAreGroupedByExceptionClass() throws IOException {
+		InMemoryDownloadMetrics metrics = DownloadMetrics.inMemory();
+
+		metrics.record(metric("http://a.example/file", Optional.empty(), 10, 0, Optional.of("java.io.FileNotFoundException: http://a.example/file")));
+		metrics.record(metric("http://a.example/other", Optional.empty(), 10, 0, Optional.of("java.io.FileNotFoundException: http://a.example/other")));
+		metrics.record(metric("http://b.example/file", Optional.empty(), 10, 0, Optional.of("java.net.SocketTimeoutException: Read timed out")));
+
+		assertThat(metrics.getFailureReasons()).containsOnly(
+			entry("java.io.FileNotFoundException", 2L),
+			entry("java.net.SocketTimeoutException", 1L));
+	}
+
+	private static DownloadMetric metric(String url, Optional<String> proxy, long millis, long bytes, Optional<String> failure) throws IOException {
+		return DownloadMetric.builder()
+			.url(new URL(url))
+			.proxy(proxy)
+			.timeToFirstByte(TimeUnit.MILLISECONDS.toNanos(millis) / 2)
+			.duration(TimeUnit.MILLISECONDS.toNanos(millis))
+			.bytes(bytes)
+			.failure(failure)
+			.build();
+	}
+}
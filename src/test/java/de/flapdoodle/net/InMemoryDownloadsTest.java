@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryDownloadsTest {
+
+	private static final String CONTENT = String.join("", Collections.nCopies(3000, UUID.randomUUID().toString()));
+	private static final byte[] DATA = CONTENT.getBytes(StandardCharsets.UTF_8);
+
+	private static final HttpServers.Listener LISTENER = session -> {
+		switch (session.getUri()) {
+			case "/fixed":
+				return Optional.of(HttpServers.response(200, "text/text", DATA));
+			case "/chunked":
+				return Optional.of(HttpServers.chunkedResponse(200, "text/text", DATA));
+		}
+		return Optional.empty();
+	};
+
+	@Test
+	public void readOnlyHeapBufferWithKnownOrUnknownLength() throws IOException {
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), LISTENER)) {
+			ByteBuffer fixed = URLConnections.downloadIntoByteBuffer(URLConnections.urlConnectionOf(server.urlOf("fixed")), (url, bytesCopied, contentLength) -> {});
+			assertThat(fixed.isReadOnly()).isTrue();
+			assertThat(contentOf(fixed)).isEqualTo(CONTENT);
+
+			ByteBuffer chunked = URLConnections.downloadIntoByteBuffer(URLConnections.urlConnectionOf(server.urlOf("chunked")), (url, bytesCopied, contentLength) -> {});
+			assertThat(contentOf(chunked)).isEqualTo(CONTENT);
+		}
+	}
+
+	@Test
+	public void memoryMapIfBiggerThanThreshold() throws IOException {
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), LISTENER)) {
+			ByteBuffer fixed = InMemoryDownloads.download(URLConnections.urlConnectionOf(server.urlOf("fixed")), (url, bytesCopied, contentLength) -> {},
+				InMemoryDownloads.Allocator.heap(), 1024);
+			assertThat(fixed).isInstanceOf(MappedByteBuffer.class);
+			assertThat(contentOf(fixed)).isEqualTo(CONTENT);
+
+			ByteBuffer chunked = InMemoryDownloads.download(URLConnections.urlConnectionOf(server.urlOf("chunked")), (url, bytesCopied, contentLength) -> {},
+				InMemoryDownloads.Allocator.heap(), 1024 * 1024);
+			assertThat(chunked).isNotInstanceOf(MappedByteBuffer.class);
+
+			ByteBuffer spilled = InMemoryDownloads.download(URLConnections.urlConnectionOf(server.urlOf("chunked")), (url, bytesCopied, contentLength) -> {},
+				InMemoryDownloads.Allocator.heap(), 1024 * 100);
+			assertThat(spilled).isInstanceOf(MappedByteBuffer.class);
+			assertThat(contentOf(spilled)).isEqualTo(CONTENT);
+		}
+	}
+
+	@Test
+	public void pooledBufferIsReused() throws IOException {
+		ByteBufferPool pool = ByteBufferPool.of(2);
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), LISTENER)) {
+			ByteBufferPool.PooledBuffer first = URLConnections.downloadIntoByteBuffer(URLConnections.urlConnectionOf(server.urlOf("fixed")), (url, bytesCopied, contentLength) -> {}, pool);
+			assertThat(first.buffer().isDirect()).isTrue();
+			assertThat(contentOf(first.buffer())).isEqualTo(CONTENT);
+			first.close();
+			first.close();
+			assertThat(pool.pooled(DATA.length)).isEqualTo(1);
+			assertThatThrownBy(first::buffer).isInstanceOf(IllegalArgumentException.class);
+
+			try (ByteBufferPool.PooledBuffer second = URLConnections.downloadIntoByteBuffer(URLConnections.urlConnectionOf(server.urlOf("chunked")), (url, bytesCopied, contentLength) -> {}, pool)) {
+				assertThat(contentOf(second.buffer())).isEqualTo(CONTENT);
+			}
+			assertThat(pool.pooled(DATA.length)).isEqualTo(1);
+		}
+	}
+
+	private static String contentOf(ByteBuffer buffer) {
+		byte[] content = new byte[buffer.remaining()];
+		buffer.duplicate().get(content);
+		return new String(content, StandardCharsets.UTF_8);
+	}
+}
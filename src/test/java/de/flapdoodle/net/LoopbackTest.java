@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.UnknownHostException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LoopbackTest {
+
+	@Test
+	public void loopbackIsDetectedOnce() throws UnknownHostException {
+		Loopback loopback = Net.loopback();
+
+		assertThat(Net.loopback()).isSameAs(loopback);
+		assertThat(Net.getLocalHost()).isSameAs(loopback.address());
+		assertThat(Net.localhostIsIPv6()).isEqualTo(loopback.isIPv6());
+	}
+
+	@Test
+	public void refreshDetectsAgain() throws UnknownHostException {
+		Loopback loopback = Net.loopback();
+		Loopback refreshed = Net.refreshLoopback();
+
+		assertThat(refreshed).isNotSameAs(loopback).isEqualTo(loopback);
+		assertThat(Net.loopback()).isSameAs(refreshed);
+	}
+
+	@Test
+	public void loopbackSupportsAtLeastOneIpStack() throws UnknownHostException {
+		Loopback loopback = Loopback.detect();
+
+		assertThat(loopback.address().isLoopbackAddress()).isTrue();
+		assertThat(loopback.supportsIPv4() || loopback.supportsIPv6()).isTrue();
+		assertThat(loopback.isDualStack()).isEqualTo(loopback.supportsIPv4() && loopback.supportsIPv6());
+		if (loopback.isIPv6()) {
+			assertThat(loopback.supportsIPv6()).isTrue();
+		} else {
+			assertThat(loopback.supportsIPv4()).isTrue();
+		}
+	}
+}
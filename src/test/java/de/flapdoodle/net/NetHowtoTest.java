@@ -29,6 +29,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.List;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,6 +46,16 @@ class NetHowtoTest {
 		recording.end();
 	}
 
+	@Test
+	public void loopback() throws IOException {
+		recording.begin();
+		Loopback loopback = Net.loopback();
+		InetAddress address = loopback.address();
+		boolean dualStack = loopback.isDualStack();
+		recording.end();
+		assertThat(address.isLoopbackAddress()).isTrue();
+	}
+
 	@Test
 	public void freeServerPort() throws IOException {
 		recording.begin();
@@ -54,6 +65,16 @@ class NetHowtoTest {
 			.isGreaterThan(0);
 	}
 
+	@Test
+	public void freeServerPorts() throws IOException {
+		recording.begin();
+		List<Integer> freeServerPorts = Net.freeServerPorts(3);
+		recording.end();
+		assertThat(freeServerPorts)
+			.hasSize(3)
+			.doesNotHaveDuplicates();
+	}
+
 	@Test
 	public void freeServerPortForHostAddress() throws IOException {
 		InetAddress hostAddress = Net.getLocalHost();
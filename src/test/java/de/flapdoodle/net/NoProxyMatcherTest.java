@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NoProxyMatcherTest {
+
+	@Test
+	public void exactHostsAndWildcards() {
+		NoProxyMatcher testee = NoProxyMatcher.of("localhost, *.internal.net,intranet*,*cache*");
+
+		assertThat(testee.matches("localhost")).isTrue();
+		assertThat(testee.matches("LocalHost")).isTrue();
+		assertThat(testee.matches("localhost2")).isFalse();
+
+		assertThat(testee.matches("repo.internal.net")).isTrue();
+		assertThat(testee.matches("internal.net")).isFalse();
+
+		assertThat(testee.matches("intranet-server")).isTrue();
+		assertThat(testee.matches("my-intranet")).isFalse();
+
+		assertThat(testee.matches("build-cache-1")).isTrue();
+		assertThat(testee.matches("example.com")).isFalse();
+	}
+
+	@Test
+	public void ipv4Ranges() {
+		NoProxyMatcher testee = NoProxyMatcher.of("10.0.0.0/8,192.168.1.0/24,127.0.*");
+
+		assertThat(testee.matches("10.1.2.3")).isTrue();
+		assertThat(testee.matches("11.1.2.3")).isFalse();
+		assertThat(testee.matches("192.168.1.200")).isTrue();
+		assertThat(testee.matches("192.168.2.1")).isFalse();
+		assertThat(testee.matches("127.0.1.1")).isTrue();
+		assertThat(testee.matches("10.example.com")).isFalse();
+	}
+
+	@Test
+	public void leadingDotMatchesDomainAndSubDomains() {
+		NoProxyMatcher testee = NoProxyMatcher.of(".internal.example");
+
+		assertThat(testee.matches("internal.example")).isTrue();
+		assertThat(testee.matches("repo.internal.example")).isTrue();
+		assertThat(testee.matches("a.b.internal.example")).isTrue();
+		assertThat(testee.matches("notinternal.example")).isFalse();
+	}
+
+	@Test
+	public void ipv6AddressesAndRanges() {
+		NoProxyMatcher testee = NoProxyMatcher.of("::1,fd00::/8,[2001:db8::1]");
+
+		assertThat(testee.matches("[::1]")).isTrue();
+		assertThat(testee.matches("0:0:0:0:0:0:0:1")).isTrue();
+		assertThat(testee.matches("[fd12:3456::1]")).isTrue();
+		assertThat(testee.matches("[fe80::1]")).isFalse();
+		assertThat(testee.matches("[2001:db8::1]")).isTrue();
+		assertThat(testee.matches("[2001:db8::2]")).isFalse();
+		assertThat(testee.matches("127.0.0.1")).isFalse();
+	}
+
+	@Test
+	public void portSpecificRules() {
+		NoProxyMatcher testee = NoProxyMatcher.of("host:8080,[::1]:9090,10.0.0.0/8:443,.example.com");
+
+		assertThat(testee.matches("host", 8080)).isTrue();
+		assertThat(testee.matches("host", 80)).isFalse();
+		assertThat(testee.matches("host")).isFalse();
+		assertThat(testee.matches("[::1]", 9090)).isTrue();
+		assertThat(testee.matches("[::1]", 8080)).isFalse();
+		assertThat(testee.matches("10.1.1.1", 443)).isTrue();
+		assertThat(testee.matches("10.1.1.1", 80)).isFalse();
+		assertThat(testee.matches("www.example.com", 1234)).isTrue();
+	}
+
+	@Test
+	public void wildcardOnlyMatchesEverything() {
+		assertThat(NoProxyMatcher.of("*").matches("anything")).isTrue();
+		assertThat(NoProxyMatcher.of("*").matches("[::1]", 80)).isTrue();
+		assertThat(NoProxyMatcher.of(",,").isEmpty()).isTrue();
+	}
+
+	@Test
+	public void parseIpv4Literals() {
+		assertThat(NoProxyMatcher.ipv4("0.0.0.0")).isEqualTo(0);
+		assertThat(NoProxyMatcher.ipv4("255.255.255.255")).isEqualTo(0xffffffffL);
+		assertThat(NoProxyMatcher.ipv4("256.0.0.1")).isEqualTo(-1);
+		assertThat(NoProxyMatcher.ipv4("1.2.3")).isEqualTo(-1);
+		assertThat(NoProxyMatcher.ipv4("1.2.3.4.5")).isEqualTo(-1);
+		assertThat(NoProxyMatcher.ipv4("1.2.3.")).isEqualTo(-1);
+		assertThat(NoProxyMatcher.ipv4("host")).isEqualTo(-1);
+	}
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PortAllocatorTest {
+
+	@Test
+	public void concurrentCallersGetDifferentPorts() throws Exception {
+		PortAllocator testee = PortAllocator.ephemeral();
+		InetAddress localHost = Net.getLocalHost();
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<List<Integer>>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++) {
+				results.add(executor.submit(() -> testee.allocate(localHost, 4)));
+			}
+			Set<Integer> ports = new HashSet<>();
+			for (Future<List<Integer>> result : results) {
+				ports.addAll(result.get(10, TimeUnit.SECONDS));
+			}
+			assertThat(ports).hasSize(32 * 4);
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void portsFromRange() throws IOException {
+		InetAddress localHost = Net.getLocalHost();
+		int from = Net.freeServerPort(localHost);
+		PortAllocator testee = PortAllocator.inRange(from, from + 2);
+
+		List<Integer> ports = testee.allocate(localHost, 2);
+
+		assertThat(ports).doesNotHaveDuplicates()
+			.allSatisfy(port -> assertThat(port).isBetween(from, from + 2));
+
+		testee.release(ports.get(0));
+		assertThat(testee.allocate(localHost)).isBetween(from, from + 2);
+	}
+
+	@Test
+	public void portsOfABatchAreNotReleasedByTheSameBatch() throws IOException {
+		InetAddress localHost = Net.getLocalHost();
+		int from = Net.freeServerPort(localHost);
+		PortAllocator testee = PortAllocator.inRange(from, from + 2);
+
+		testee.release(testee.allocate(localHost));
+		testee.allocate(localHost);
+		List<Integer> batch = testee.allocate(localHost, 2);
+
+		assertThat(batch).doesNotHaveDuplicates();
+		assertThat(testee.allocate(localHost)).isNotIn(batch);
+	}
+
+	@Test
+	public void skipPortsInUse() throws IOException {
+		InetAddress localHost = Net.getLocalHost();
+		try (ServerSocket inUse = new ServerSocket(0, 0, localHost)) {
+			int port = inUse.getLocalPort();
+			PortAllocator testee = PortAllocator.inRange(port, port);
+
+			assertThatThrownBy(() -> testee.allocate(localHost))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("no free port");
+		}
+	}
+
+	@Test
+	public void lockDirectoryReservesPortsForOtherAllocators(@TempDir Path tempDir) throws IOException {
+		InetAddress localHost = Net.getLocalHost();
+		int from = Net.freeServerPort(localHost);
+		PortAllocator first = PortAllocator.inRange(from, from + 1).withLockDirectory(tempDir);
+		PortAllocator second = PortAllocator.inRange(from, from + 1).withLockDirectory(tempDir);
+
+		int port = first.allocate(localHost);
+		int otherPort = second.allocate(localHost);
+
+		assertThat(otherPort).isNotEqualTo(port);
+		assertThat(tempDir.resolve("port-" + port + ".lock")).exists();
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResumableDownloadsTest {
+
+	@Test
+	public void resumeFailedDownload(@TempDir Path tempDir) throws IOException {
+		String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		int half = data.length / 2;
+		Path destination = tempDir.resolve("download");
+
+		AtomicInteger requests = new AtomicInteger();
+		List<String> ranges = new CopyOnWriteArrayList<>();
+		List<String> ifRanges = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				NanoHTTPD.Response response;
+				if (requests.incrementAndGet() == 1) {
+					response = HttpServers.response(200, "text/text", Arrays.copyOf(data, half), data.length);
+				} else {
+					Optional.ofNullable(session.getHeaders().get("range")).ifPresent(ranges::add);
+					Optional.ofNullable(session.getHeaders().get("if-range")).ifPresent(ifRanges::add);
+					response = HttpServers.rangeResponse(session, "text/text", data);
+				}
+				response.addHeader("ETag", "\"v1\"");
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			assertThatThrownBy(() -> URLConnections.downloadIntoFileResumable(server.urlOf("download"), destination, (url, bytesCopied, contentLength) -> {}))
+				.isInstanceOf(ResumableDownloads.IncompleteDownloadException.class)
+				.hasMessageContaining("partial");
+
+			Path partFile = ResumableDownloads.partFileOf(destination);
+			assertThat(partFile).exists().hasSize(half);
+			assertThat(ResumableDownloads.stateFileOf(partFile)).exists();
+			assertThat(destination).doesNotExist();
+
+			List<Long> downloadSizes = new ArrayList<>();
+			URLConnections.downloadIntoFileResumable(server.urlOf("download"), destination, (url, bytesCopied, contentLength) -> {
+				downloadSizes.add(bytesCopied);
+				assertThat(contentLength).isEqualTo(data.length);
+			});
+
+			assertThat(destination).exists().hasContent(content);
+			assertThat(partFile).doesNotExist();
+			assertThat(ResumableDownloads.stateFileOf(partFile)).doesNotExist();
+			assertThat(downloadSizes.get(0)).isEqualTo((long) half);
+		}
+
+		assertThat(ranges).containsExactly("bytes=" + half + "-");
+		assertThat(ifRanges).containsExactly("\"v1\"");
+	}
+
+	@Test
+	public void restartIfServerSendsWholeContent(@TempDir Path tempDir) throws IOException {
+		String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		Path destination = tempDir.resolve("download");
+
+		AtomicInteger requests = new AtomicInteger();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				NanoHTTPD.Response response = requests.incrementAndGet() == 1
+					? HttpServers.response(200, "text/text", Arrays.copyOf(data, data.length / 2), data.length)
+					: HttpServers.response(200, "text/text", data);
+				response.addHeader("ETag", "\"v" + requests.get() + "\"");
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			assertThatThrownBy(() -> URLConnections.downloadIntoFileResumable(server.urlOf("download"), destination, (url, bytesCopied, contentLength) -> {}))
+				.isInstanceOf(ResumableDownloads.IncompleteDownloadException.class);
+
+			URLConnections.downloadIntoFileResumable(server.urlOf("download"), destination, (url, bytesCopied, contentLength) -> {});
+
+			assertThat(destination).exists().hasContent(content);
+		}
+	}
+}
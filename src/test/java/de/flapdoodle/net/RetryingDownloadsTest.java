@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryingDownloadsTest {
+
+	private static final RetryPolicy FAST_RETRIES = RetryPolicy.builder()
+		.maxAttempts(3)
+		.initialBackoffMillis(1)
+		.maxBackoffMillis(10)
+		.build();
+
+	@Test
+	public void retryAndResumeWithDataOfFailedAttempt(@TempDir Path tempDir) throws IOException {
+		String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		int half = data.length / 2;
+		Path destination = tempDir.resolve("download");
+
+		AtomicInteger requests = new AtomicInteger();
+		List<String> ranges = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				NanoHTTPD.Response response;
+				Optional.ofNullable(session.getHeaders().get("range")).ifPresent(ranges::add);
+				switch (requests.incrementAndGet()) {
+					case 1:
+						response = HttpServers.response(200, "text/text", Arrays.copyOf(data, half), data.length);
+						break;
+					case 2:
+						response = HttpServers.response(503, "text/text", "busy".getBytes(StandardCharsets.UTF_8));
+						response.addHeader("Retry-After", "0");
+						break;
+					default:
+						response = HttpServers.rangeResponse(session, "text/text", data);
+				}
+				response.addHeader("ETag", "\"v1\"");
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		InMemoryDownloadMetrics metrics = DownloadMetrics.inMemory();
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			URLConnections.downloadIntoFileResumable(server.urlOf("download"), destination, (url, bytesCopied, contentLength) -> {}, FAST_RETRIES, metrics);
+		}
+
+		assertThat(destination).exists().hasContent(content);
+		assertThat(ResumableDownloads.partFileOf(destination)).doesNotExist();
+		assertThat(requests.get()).isEqualTo(3);
+		assertThat(ranges).containsExactly("bytes=" + half + "-", "bytes=" + half + "-");
+		assertThat(metrics.getDownloads()).isEqualTo(1);
+		assertThat(metrics.getRetries()).isEqualTo(2);
+		assertThat(metrics.getFailures()).isEqualTo(0);
+	}
+
+	@Test
+	public void doNotRetryIfNotFound(@TempDir Path tempDir) throws IOException {
+		AtomicInteger requests = new AtomicInteger();
+		HttpServers.Listener listener = session -> {
+			requests.incrementAndGet();
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			assertThatThrownBy(() -> URLConnections.downloadIntoFileResumable(server.urlOf("missing"), tempDir.resolve("missing"), (url, bytesCopied, contentLength) -> {}, FAST_RETRIES))
+				.isInstanceOfSatisfying(HttpStatusException.class, ex -> assertThat(ex.statusCode()).isEqualTo(404));
+		}
+
+		assertThat(requests.get()).isEqualTo(1);
+	}
+
+	@Test
+	public void failIfAllAttemptsFailed(@TempDir Path tempDir) throws IOException {
+		AtomicInteger requests = new AtomicInteger();
+		HttpServers.Listener listener = session -> {
+			requests.incrementAndGet();
+			return Optional.of(HttpServers.response(500, "text/text", "internal error".getBytes(StandardCharsets.UTF_8)));
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			assertThatThrownBy(() -> URLConnections.downloadIntoFileResumable(server.urlOf("download"), tempDir.resolve("download"), (url, bytesCopied, contentLength) -> {}, FAST_RETRIES))
+				.isInstanceOfSatisfying(HttpStatusException.class, ex -> assertThat(ex.statusCode()).isEqualTo(500));
+		}
+
+		assertThat(requests.get()).isEqualTo(3);
+	}
+
+	@Test
+	public void exponentialBackoffWithJitter() {
+		RetryPolicy policy = RetryPolicy.builder()
+			.initialBackoffMillis(100)
+			.maxBackoffMillis(1000)
+			.multiplier(2.0)
+			.jitter(0.5)
+			.build();
+
+		assertThat(policy.backoffMillis(1, 0.0)).isEqualTo(100);
+		assertThat(policy.backoffMillis(2, 0.0)).isEqualTo(200);
+		assertThat(policy.backoffMillis(3, 0.0)).isEqualTo(400);
+		assertThat(policy.backoffMillis(10, 0.0)).isEqualTo(1000);
+		assertThat(policy.backoffMillis(2, 1.0)).isEqualTo(100);
+	}
+
+	@Test
+	public void classifyFailures() {
+		RetryPolicy policy = RetryPolicy.defaults();
+
+		assertThat(policy.isRetryable(new SocketException("connection reset"))).isTrue();
+		assertThat(policy.isRetryable(new ResumableDownloads.IncompleteDownloadException("partial"))).isTrue();
+		assertThat(policy.isRetryable(new UnknownHostException("nowhere"))).isFalse();
+		assertThat(policy.isRetryable(new IllegalArgumentException("checksum mismatch"))).isFalse();
+		assertThat(policy.isRetryable(429)).isTrue();
+		assertThat(policy.isRetryable(403)).isFalse();
+	}
+}
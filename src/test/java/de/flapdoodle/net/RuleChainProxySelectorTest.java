@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RuleChainProxySelectorTest {
+
+	@Test
+	public void firstMatchingRuleWins() throws MalformedURLException {
+		RuleChainProxySelector testee = RuleChainProxySelector.builder()
+			.direct(".internal.example, 10.0.0.0/8")
+			.rule("*.github.com", ProxyFactory.of("proxy-a", 8080), ProxyFactory.of("proxy-b", 8080))
+			.rule("*", ProxyFactory.of("proxy", 3128))
+			.build();
+
+		assertThat(testee.select(new URL("https://repo.internal.example/foo"))).isEmpty();
+		assertThat(testee.select(new URL("http://10.1.2.3/foo"))).isEmpty();
+		assertThat(testee.select(new URL("https://api.github.com/foo"))).contains(ProxyFactory.of("proxy-a", 8080));
+		assertThat(testee.candidates(new URL("https://api.github.com/foo")))
+			.containsExactly(Optional.of(ProxyFactory.of("proxy-a", 8080)), Optional.of(ProxyFactory.of("proxy-b", 8080)));
+		assertThat(testee.select(new URL("https://example.com/foo"))).contains(ProxyFactory.of("proxy", 3128));
+	}
+
+	@Test
+	public void fallbackIfNoRuleMatches() throws MalformedURLException {
+		RuleChainProxySelector direct = RuleChainProxySelector.builder()
+			.rule("*.github.com", ProxyFactory.of("proxy", 8080))
+			.build();
+		RuleChainProxySelector withFallback = RuleChainProxySelector.builder()
+			.rule("*.github.com", ProxyFactory.of("proxy", 8080))
+			.fallback(ProxyFactory.of("fallback", 3128))
+			.build();
+
+		assertThat(direct.select(new URL("https://example.com"))).isEmpty();
+		assertThat(withFallback.select(new URL("https://example.com"))).contains(ProxyFactory.of("fallback", 3128));
+	}
+
+	@Test
+	public void rulesWithPorts() throws MalformedURLException {
+		RuleChainProxySelector testee = RuleChainProxySelector.builder()
+			.direct("example.com:8080")
+			.fallback(ProxyFactory.of("proxy", 3128))
+			.build();
+
+		assertThat(testee.select(new URL("http://example.com:8080/"))).isEmpty();
+		assertThat(testee.select(new URL("http://example.com/"))).contains(ProxyFactory.of("proxy", 3128));
+	}
+
+	@Test
+	public void cachedDecisionIsReused() throws MalformedURLException {
+		RuleChainProxySelector testee = RuleChainProxySelector.builder()
+			.rule("*.github.com", ProxyFactory.of("proxy", 8080))
+			.cacheSize(1)
+			.build();
+
+		assertThat(testee.candidates(new URL("https://api.github.com/a")))
+			.isSameAs(testee.candidates(new URL("https://api.github.com/b")));
+		assertThat(testee.select(new URL("https://example.com"))).isEmpty();
+		assertThat(testee.select(new URL("https://api.github.com/a"))).contains(ProxyFactory.of("proxy", 8080));
+	}
+
+	@Test
+	public void parsePacLikeRules() throws MalformedURLException {
+		RuleChainProxySelector testee = RuleChainProxySelector.parse(""
+			+ "# internal traffic\n"
+			+ ".internal.example, 10.0.0.0/8   DIRECT\n"
+			+ "\n"
+			+ "*.github.com  PROXY proxy-a:8080; PROXY proxy-b:8080; DIRECT\n"
+			+ "*             proxy proxy:3128\n");
+
+		assertThat(testee.select(new URL("https://internal.example/foo"))).isEmpty();
+		assertThat(testee.candidates(new URL("https://api.github.com/foo")))
+			.containsExactly(Optional.of(ProxyFactory.of("proxy-a", 8080)), Optional.of(ProxyFactory.of("proxy-b", 8080)), Optional.empty());
+		assertThat(testee.select(new URL("https://example.com/foo"))).contains(ProxyFactory.of("proxy", 3128));
+	}
+
+	@Test
+	public void invalidRules() {
+		assertThatThrownBy(() -> RuleChainProxySelector.parse("*.github.com"))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("line 1");
+		assertThatThrownBy(() -> RuleChainProxySelector.parse("\n*.github.com PROXY proxy"))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("line 2");
+		assertThatThrownBy(() -> RuleChainProxySelector.parse("*.github.com PROXY proxy:foo"))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("invalid port");
+		assertThatThrownBy(() -> RuleChainProxySelector.parse("*.github.com SOCKS proxy:1080"))
+			.isInstanceOf(IllegalArgumentException.class);
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SegmentedDownloadsTest {
+
+	@ParameterizedTest(name = "segments: {0}")
+	@ValueSource(ints = {1,2,3,7})
+	public void downloadWithRanges(int segments) throws IOException {
+		String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		List<String> ranges = new CopyOnWriteArrayList<>();
+		List<String> ifRanges = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				String range = session.getHeaders().get("range");
+				if (range != null) ranges.add(range);
+				Optional.ofNullable(session.getHeaders().get("if-range")).ifPresent(ifRanges::add);
+				NanoHTTPD.Response response = HttpServers.rangeResponse(session, "text/text", data);
+				response.addHeader("ETag", "\"v1\"");
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		List<Long> downloadSizes = new CopyOnWriteArrayList<>();
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			Path destination = SegmentedDownloads.downloadIntoTempFile(server.urlOf("download"), URLConnections::urlConnectionOf, segments, 1024,
+				(url, bytesCopied, contentLength) -> {
+					downloadSizes.add(bytesCopied);
+					assertThat(contentLength).isEqualTo(data.length);
+				});
+
+			assertThat(destination)
+				.exists()
+				.hasContent(content);
+
+			Files.delete(destination);
+		}
+
+		assertThat(ranges).hasSize(segments > 1 ? segments : 0);
+		assertThat(ifRanges).hasSize(segments > 1 ? segments : 0).allMatch("\"v1\""::equals);
+		assertThat(downloadSizes).isSorted();
+		assertThat(downloadSizes.get(0)).isEqualTo(0L);
+		assertThat(downloadSizes.get(downloadSizes.size() - 1)).isEqualTo((long) data.length);
+	}
+
+	@Test
+	public void fallbackToSingleConnectionIfServerDoesNotSupportRanges() throws IOException {
+		String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+		List<String> ranges = new CopyOnWriteArrayList<>();
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				String range = session.getHeaders().get("range");
+				if (range != null) ranges.add(range);
+				byte[] data = content.getBytes(StandardCharsets.UTF_8);
+				return Optional.of(session.getMethod() == NanoHTTPD.Method.HEAD
+					? HttpServers.headResponse("text/text", data)
+					: HttpServers.response(200, "text/text", data));
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			Path destination = SegmentedDownloads.downloadIntoTempFile(server.urlOf("download"), URLConnections::urlConnectionOf, 4, 1024,
+				(url, bytesCopied, contentLength) -> {});
+
+			assertThat(destination)
+				.exists()
+				.hasContent(content);
+
+			Files.delete(destination);
+		}
+
+		assertThat(ranges).isEmpty();
+	}
+
+	@Test
+	public void failIfContentChangedAfterProbe() throws IOException {
+		byte[] before = String.join("", Collections.nCopies(1000, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+		byte[] after = String.join("", Collections.nCopies(1000, UUID.randomUUID().toString())).getBytes(StandardCharsets.UTF_8);
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				NanoHTTPD.Response response;
+				if (session.getMethod() == NanoHTTPD.Method.HEAD) {
+					response = HttpServers.rangeResponse(session, "text/text", before);
+					response.addHeader("ETag", "\"v1\"");
+				} else {
+					// If-Range does not match, so the whole new content is sent
+					response = HttpServers.response(200, "text/text", after);
+					response.addHeader("ETag", "\"v2\"");
+				}
+				return Optional.of(response);
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			assertThatThrownBy(() -> SegmentedDownloads.downloadIntoTempFile(server.urlOf("download"), URLConnections::urlConnectionOf, 4, 1024,
+				(url, bytesCopied, contentLength) -> {}))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("failed: 200");
+		}
+	}
+
+	@Test
+	public void splitIntoSegments() {
+		List<SegmentedDownloads.Segment> segments = SegmentedDownloads.Segment.split(10, 3);
+
+		assertThat(segments)
+			.extracting(SegmentedDownloads.Segment::rangeHeader)
+			.containsExactly("bytes=0-2", "bytes=3-5", "bytes=6-9");
+	}
+
+	@Test
+	public void downloadIntoFileWithSegments(@TempDir Path tempDir) throws IOException {
+		String content=String.join("", Collections.nCopies(10, UUID.randomUUID().toString()));
+		Path destination = tempDir.resolve("download");
+
+		HttpServers.Listener listener = session -> {
+			if (session.getUri().equals("/download")) {
+				return Optional.of(HttpServers.rangeResponse(session, "text/text", content.getBytes(StandardCharsets.UTF_8)));
+			}
+			return Optional.empty();
+		};
+
+		try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+			URL url = server.urlOf("download");
+			URLConnections.downloadIntoFile(url, destination, 4, (u, bytesCopied, contentLength) -> {});
+		}
+
+		assertThat(destination)
+			.exists()
+			.hasContent(content);
+	}
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+	@Test
+	public void burstIsAvailableWithoutWaiting() {
+		TokenBucket testee = new TokenBucket(100, 1000, 0);
+
+		assertThat(testee.reserve(1000, 0)).isEqualTo(0);
+	}
+
+	@Test
+	public void debtMustBePaidWithTime() {
+		TokenBucket testee = new TokenBucket(100, 100, 0);
+
+		assertThat(testee.reserve(300, 0)).isEqualTo(TimeUnit.SECONDS.toNanos(2));
+		// the next one has to wait for the debt of the first one
+		assertThat(testee.reserve(100, 0)).isEqualTo(TimeUnit.SECONDS.toNanos(3));
+		assertThat(testee.reserve(0, TimeUnit.SECONDS.toNanos(3))).isEqualTo(0);
+	}
+
+	@Test
+	public void tokensAreCappedByBurst() {
+		TokenBucket testee = new TokenBucket(100, 100, 0);
+
+		assertThat(testee.reserve(200, TimeUnit.SECONDS.toNanos(60))).isEqualTo(TimeUnit.SECONDS.toNanos(1));
+	}
+
+	@Test
+	public void acquireBlocksUntilCovered() {
+		TokenBucket testee = TokenBucket.of(10_000, 1);
+
+		long start = System.nanoTime();
+		testee.acquire(1001);
+		long elapsed = System.nanoTime() - start;
+
+		assertThat(elapsed).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(90));
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TransfersTest {
+
+	@Test
+	public void transferBlockwiseIntoFile(@TempDir Path tempDir) throws IOException {
+		String content=String.join("", Collections.nCopies(5000, UUID.randomUUID().toString()));
+		byte[] data = content.getBytes(StandardCharsets.UTF_8);
+		Path file = tempDir.resolve("file");
+		Files.write(file, "prefix".getBytes(StandardCharsets.UTF_8));
+
+		List<Long> blocks = new ArrayList<>();
+		List<Long> totals = new ArrayList<>();
+
+		try (ReadableByteChannel source = Channels.newChannel(new ByteArrayInputStream(data));
+			FileChannel destination = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			long transferred = Transfers.transferFrom(source, destination, "prefix".length(), (block, total) -> {
+				blocks.add(block);
+				totals.add(total);
+			});
+			assertThat(transferred).isEqualTo(data.length);
+		}
+
+		assertThat(file).hasContent("prefix" + content);
+		assertThat(blocks).allMatch(it -> it > 0 && it <= Transfers.BLOCK_SIZE);
+		assertThat(blocks.stream().mapToLong(Long::longValue).sum()).isEqualTo(data.length);
+		assertThat(totals).isSorted().last().isEqualTo((long) data.length);
+	}
+}
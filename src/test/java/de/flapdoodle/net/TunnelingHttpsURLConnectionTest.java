@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016
+ *   Michael Mosmann <michael@mosmann.de>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package de.flapdoodle.net;
+
+import fi.iki.elonen.NanoHTTPD;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.HttpsURLConnection;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TunnelingHttpsURLConnectionTest {
+
+	private static final String USER = "user";
+	private static final String PASSWORD = "passwd";
+
+	private static final HttpConnections TUNNELING = HttpConnections.builder()
+		.tunnelHttpsOverProxyWithBasicAuth(true)
+		.build();
+
+	private static final String CONTENT = String.join("", Collections.nCopies(100, UUID.randomUUID().toString()));
+
+	private static final HttpServers.Listener LISTENER = session -> {
+		switch (session.getUri()) {
+			case "/fixed":
+				return Optional.of(HttpServers.response(200, "text/text", CONTENT.getBytes(StandardCharsets.UTF_8)));
+			case "/chunked":
+				return Optional.of(HttpServers.chunkedResponse(200, "text/text", CONTENT.getBytes(StandardCharsets.UTF_8)));
+			case "/redirect": {
+				NanoHTTPD.Response response = HttpServers.response(302, "text/text", "moved".getBytes(StandardCharsets.UTF_8));
+				response.addHeader("Location", "/fixed");
+				return Optional.of(response);
+			}
+			case "/truncated": {
+				byte[] content = CONTENT.getBytes(StandardCharsets.UTF_8);
+				return Optional.of(HttpServers.response(200, "text/text", Arrays.copyOf(content, content.length / 2), content.length));
+			}
+		}
+		return Optional.empty();
+	};
+
+	private static final HttpServers.HttpsProxyServer.HttpsProxySessionListener PROXY_LISTENER = session -> {
+		String expected = "Basic " + Base64.getEncoder().encodeToString((USER + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8));
+		if (!expected.equals(Optional.ofNullable(session.headers().get("Proxy-Authorization")).map(String::trim).orElse(null))) {
+			session.response(407, "Proxy Authorization Required", "Proxy-Authenticate", "Basic realm=\"Protected\"");
+		}
+	};
+
+	@Test
+	public void downloadThroughTunnel() throws Exception {
+		int port = Net.freeServerPort();
+
+		try (HttpServers.HttpsServer httpsServer = new HttpServers.HttpsServer(port, LISTENER);
+			HttpServers.HttpsProxyServer proxyServer = new HttpServers.HttpsProxyServer(Net.freeServerPort(), PROXY_LISTENER)) {
+
+			for (String resource : new String[] { "fixed", "chunked" }) {
+				HttpsURLConnection connection = connectionOf(httpsServer.urlOf(resource), proxyServer, PASSWORD);
+				assertThat(connection).isInstanceOf(TunnelingHttpsURLConnection.class);
+
+				byte[] content = URLConnections.downloadIntoByteArray(connection);
+				assertThat(new String(content, StandardCharsets.UTF_8)).isEqualTo(CONTENT);
+			}
+
+			HttpsURLConnection missing = connectionOf(httpsServer.urlOf("missing"), proxyServer, PASSWORD);
+			assertThat(missing.getResponseCode()).isEqualTo(404);
+		}
+	}
+
+	@Test
+	public void followRedirects() throws Exception {
+		try (HttpServers.HttpsServer httpsServer = new HttpServers.HttpsServer(Net.freeServerPort(), LISTENER);
+			HttpServers.HttpsProxyServer proxyServer = new HttpServers.HttpsProxyServer(Net.freeServerPort(), PROXY_LISTENER)) {
+
+			HttpsURLConnection connection = connectionOf(httpsServer.urlOf("redirect"), proxyServer, PASSWORD);
+			byte[] content = URLConnections.downloadIntoByteArray(connection);
+			assertThat(new String(content, StandardCharsets.UTF_8)).isEqualTo(CONTENT);
+			assertThat(connection.getURL()).isEqualTo(httpsServer.urlOf("fixed"));
+
+			HttpsURLConnection notFollowed = connectionOf(httpsServer.urlOf("redirect"), proxyServer, PASSWORD);
+			notFollowed.setInstanceFollowRedirects(false);
+			assertThat(notFollowed.getResponseCode()).isEqualTo(302);
+			assertThat(notFollowed.getHeaderField("Location")).isEqualTo("/fixed");
+		}
+	}
+
+	@Test
+	public void failIfResponseIsShorterThanContentLength() throws Exception {
+		try (HttpServers.HttpsServer httpsServer = new HttpServers.HttpsServer(Net.freeServerPort(), LISTENER);
+			HttpServers.HttpsProxyServer proxyServer = new HttpServers.HttpsProxyServer(Net.freeServerPort(), PROXY_LISTENER)) {
+
+			HttpsURLConnection connection = connectionOf(httpsServer.urlOf("truncated"), proxyServer, PASSWORD);
+			assertThatThrownBy(() -> URLConnections.downloadIntoByteArray(connection))
+				.isInstanceOf(IOException.class);
+		}
+	}
+
+	@Test
+	public void failIfProxyDeniesTunnel() throws Exception {
+		int port = Net.freeServerPort();
+
+		try (HttpServers.HttpsServer httpsServer = new HttpServers.HttpsServer(port, LISTENER);
+			HttpServers.HttpsProxyServer proxyServer = new HttpServers.HttpsProxyServer(Net.freeServerPort(), PROXY_LISTENER)) {
+
+			HttpsURLConnection connection = connectionOf(httpsServer.urlOf("fixed"), proxyServer, "wrong");
+
+			assertThatThrownBy(() -> URLConnections.downloadIntoByteArray(connection))
+				.isInstanceOf(IOException.class)
+				.hasMessageContaining("Unable to tunnel through proxy")
+				.hasMessageContaining("407");
+		}
+	}
+
+	@Test
+	public void tunnelMustBeEnabled() throws Exception {
+		assertThatThrownBy(() -> HttpConnections.defaults().open(new URL("https://localhost/"), Proxys.httpProxy("localhost", 1, USER, PASSWORD)))
+			.isInstanceOf(IllegalArgumentException.class)
+			.hasMessageContaining("tunnelHttpsOverProxyWithBasicAuth");
+	}
+
+	private static HttpsURLConnection connectionOf(URL url, HttpServers.HttpsProxyServer proxyServer, String password) throws Exception {
+		HttpsURLConnection connection = (HttpsURLConnection) TUNNELING.open(url,
+			Proxys.httpProxy(proxyServer.getHostname(), proxyServer.getListeningPort(), USER, password));
+		connection.setSSLSocketFactory(Net.acceptAllSSLContext().getSocketFactory());
+		return connection;
+	}
+}
@@ -43,6 +43,11 @@ public class URLConnectionsHowtoTest {
 		recording.output("envVar", URLConnections.USE_ENV_PROXY_SELECTOR);
 	}
 
+	@Test
+	public void enableHttpsTunnelOverProxyWithBasicAuth() {
+		recording.output("property", URLConnections.TUNNEL_HTTPS_OVER_PROXY_WITH_BASIC_AUTH);
+	}
+
 	@Test
 	public void connectionAndDownloadToByteArray() throws IOException {
 		String content="content";
@@ -16,6 +16,7 @@
  */
 package de.flapdoodle.net;
 
+import de.flapdoodle.hash.Hasher;
 import de.flapdoodle.types.Pair;
 import fi.iki.elonen.NanoHTTPD;
 import org.junit.jupiter.api.Disabled;
@@ -95,6 +96,64 @@ class URLConnectionsTest {
 			}
 		}
 
+		@Test
+		public void downloadIntoFileMustMatchChecksums(@TempDir Path tempDir) throws IOException {
+			String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+			byte[] data = content.getBytes(StandardCharsets.UTF_8);
+			Path destination = tempDir.resolve("download");
+
+			HttpServers.Listener listener = session -> {
+				if (session.getUri().equals("/test")) {
+					return Optional.of(HttpServers.response(200, "text/text", data));
+				}
+				return Optional.empty();
+			};
+
+			String sha256 = Hasher.instance().update(data).hashAsString();
+			String md5 = Hasher.md5Instance().update(data).hashAsString();
+
+			try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+				URLConnections.downloadIntoFile(URLConnections.urlConnectionOf(server.urlOf("test")), destination, (url, bytesCopied, contentLength) -> {},
+					Checksum.sha256(sha256.toUpperCase()), Checksum.md5(md5));
+
+				assertThat(destination)
+					.exists()
+					.hasContent(content);
+
+				Path otherDestination = tempDir.resolve("other");
+				assertThatThrownBy(() -> URLConnections.downloadIntoFile(URLConnections.urlConnectionOf(server.urlOf("test")), otherDestination, (url, bytesCopied, contentLength) -> {},
+					Checksum.sha256(sha256), Checksum.md5(sha256)))
+					.isInstanceOf(IllegalArgumentException.class)
+					.hasMessageContaining("checksum mismatch");
+
+				assertThat(otherDestination).doesNotExist();
+			}
+		}
+
+		@Test
+		public void hashWhileDownloading() throws IOException {
+			String content=String.join("", Collections.nCopies(1000, UUID.randomUUID().toString()));
+			byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+			HttpServers.Listener listener = session -> {
+				if (session.getUri().equals("/test")) {
+					return Optional.of(HttpServers.response(200, "text/text", data));
+				}
+				return Optional.empty();
+			};
+
+			Hasher sha256 = Hasher.instance();
+			Hasher md5 = Hasher.md5Instance();
+
+			try (HttpServers.HttpServer server = new HttpServers.HttpServer(Net.freeServerPort(), listener)) {
+				Path tempFile = URLConnections.downloadIntoTempFile(URLConnections.urlConnectionOf(server.urlOf("test")), (url, bytesCopied, contentLength) -> {}, sha256, md5);
+				Files.delete(tempFile);
+			}
+
+			assertThat(sha256.hashAsString()).isEqualTo(Hasher.instance().update(data).hashAsString());
+			assertThat(md5.hashAsString()).isEqualTo(Hasher.md5Instance().update(data).hashAsString());
+		}
+
 		@ParameterizedTest(name = "blocks: {0}")
 		@ValueSource(ints = {0,1,4,20,100})
 		public void downloadShouldBeMovedToDestinationOnSuccess(int blocks) throws IOException {